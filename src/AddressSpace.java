@@ -0,0 +1,147 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Virtual address space of one process: which page ranges (regions) were handed out by AllocateMemory, and which are free.
+ * Only the ranges are recorded here; page table entries and frames appear when a page is first touched.
+ * Free ranges are indexed by address (to coalesce neighbours) and by size (best fit), so allocation and freeing are
+ * O(log n) in the number of regions
+ */
+public class AddressSpace {
+    private final TreeMap<Integer, Integer> regions; // start page to length in pages
+    private final TreeMap<Integer, Integer> freeByStart; // start page to length in pages
+    private final TreeSet<Long> freeBySize; // length << 32 | start, smallest fitting range first
+    private long allocatedPages;
+
+    /**
+     * Constructs an address space whose pages are all free
+     * @param pages Number of virtual pages
+     */
+    public AddressSpace(int pages) {
+        this.regions = new TreeMap<>();
+        this.freeByStart = new TreeMap<>();
+        this.freeBySize = new TreeSet<>();
+        AddFree(0, pages);
+    }
+
+    /**
+     * Constructs a copy of another address space, with the same regions allocated
+     * @param other Address space to copy
+     */
+    public AddressSpace(AddressSpace other) {
+        this.regions = new TreeMap<>(other.regions);
+        this.freeByStart = new TreeMap<>(other.freeByStart);
+        this.freeBySize = new TreeSet<>(other.freeBySize);
+        this.allocatedPages = other.allocatedPages;
+    }
+
+    /**
+     * Hands out a range of virtual pages, best fit (lowest address among equally good fits)
+     * @param pages Number of pages needed
+     * @return First page of the range, -1 if no free range is large enough
+     */
+    public int Allocate(int pages) {
+        if (pages < 1) return -1;
+        Long fit = freeBySize.ceiling((long) pages << 32);
+        if (fit == null) return -1;
+        int start = (int) (long) fit;
+        int length = (int) (fit >>> 32);
+        RemoveFree(start, length);
+        if (length > pages) AddFree(start + pages, length - pages);
+        regions.put(start, pages);
+        allocatedPages += pages;
+        return start;
+    }
+
+    /**
+     * Hands out a range of virtual pages starting at a multiple of an alignment, e.g. for huge pages; the smallest
+     * free range the aligned range fits in
+     * @param pages Number of pages
+     * @param alignment Alignment in pages, a power of two
+     * @return First page of the range, -1 if no free range is large enough
+     */
+    public int AllocateAligned(int pages, int alignment) {
+        if (pages < 1) return -1;
+        for (long fit : freeBySize.tailSet((long) pages << 32)) {
+            long start = (int) fit, end = start + (fit >>> 32);
+            long aligned = (start + alignment - 1) & -alignment;
+            if (aligned + pages <= end) {
+                Reserve((int) aligned, pages);
+                return (int) aligned;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Allocates a range at a fixed address, e.g. to give back pages that were taken away
+     * @param start First page
+     * @param pages Number of pages
+     * @return False if any page of the range is already allocated
+     */
+    public boolean Reserve(int start, int pages) {
+        Map.Entry<Integer, Integer> free = freeByStart.floorEntry(start);
+        if (pages < 1 || free == null || (long) start + pages > (long) free.getKey() + free.getValue()) return false;
+        int freeStart = free.getKey(), freeEnd = free.getKey() + free.getValue();
+        RemoveFree(freeStart, free.getValue());
+        if (start > freeStart) AddFree(freeStart, start - freeStart);
+        if (start + pages < freeEnd) AddFree(start + pages, freeEnd - start - pages);
+        regions.put(start, pages);
+        allocatedPages += pages;
+        return true;
+    }
+
+    /**
+     * Returns pages to the free ranges. The pages must lie within one region; freeing part of a region splits it
+     * @param start First page to free
+     * @param pages Number of pages to free
+     * @return False if the range is not inside a single allocated region
+     */
+    public boolean Free(int start, int pages) {
+        Map.Entry<Integer, Integer> region = regions.floorEntry(start);
+        if (pages < 1 || region == null || (long) start + pages > (long) region.getKey() + region.getValue()) return false;
+        int regionStart = region.getKey(), regionEnd = region.getKey() + region.getValue();
+        regions.remove(regionStart);
+        if (start > regionStart) regions.put(regionStart, start - regionStart);
+        if (start + pages < regionEnd) regions.put(start + pages, regionEnd - start - pages);
+        allocatedPages -= pages;
+        // coalesce with free neighbours on both sides
+        int freeStart = start, freeEnd = start + pages;
+        Map.Entry<Integer, Integer> before = freeByStart.floorEntry(start);
+        if (before != null && before.getKey() + before.getValue() == start) {
+            freeStart = before.getKey();
+            RemoveFree(before.getKey(), before.getValue());
+        }
+        Integer after = freeByStart.get(freeEnd);
+        if (after != null) {
+            RemoveFree(freeEnd, after);
+            freeEnd += after;
+        }
+        AddFree(freeStart, freeEnd - freeStart);
+        return true;
+    }
+
+    /**
+     * Flags whether a virtual page lies in an allocated region, i.e. whether touching it may fault in a frame
+     * @param virtualPageNumber Virtual page number
+     * @return True if the page was allocated
+     */
+    public boolean Contains(int virtualPageNumber) {
+        Map.Entry<Integer, Integer> region = regions.floorEntry(virtualPageNumber);
+        return region != null && virtualPageNumber < region.getKey() + region.getValue();
+    }
+
+    private void AddFree(int start, int length) {
+        freeByStart.put(start, length);
+        freeBySize.add((long) length << 32 | start);
+    }
+    private void RemoveFree(int start, int length) {
+        freeByStart.remove(start);
+        freeBySize.remove((long) length << 32 | start);
+    }
+
+    public int GetRegions() { return regions.size(); }
+    public int GetFreeRanges() { return freeByStart.size(); }
+    public long GetAllocatedPages() { return allocatedPages; }
+}
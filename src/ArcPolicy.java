@@ -0,0 +1,82 @@
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Adaptive replacement cache. Resident pages sit in T1 (seen once) or T2 (seen again); the ghost lists B1 and B2
+ * remember pages recently evicted from each. A fault on a ghost shifts the target size of T1, so the cache adapts
+ * between recency and frequency and a long scan cannot flush the frequently used pages.
+ * Hits are not visible to the pager one by one, so they are read from the accessed bits when the page reaches the
+ * end of its list (as in CAR): a referenced page moves to the back of T2 instead of being evicted
+ */
+public class ArcPolicy implements PageReplacementPolicy {
+    private final int capacity;
+    private final Frames view;
+    private final long[] pages; // page held by each frame
+    private final LinkedHashSet<Integer> t1, t2; // resident frames, oldest first
+    private final LinkedHashSet<Long> b1, b2; // evicted pages, oldest first
+    private int target; // desired size of T1
+
+    public ArcPolicy(int frames, Frames view) {
+        this.capacity = frames;
+        this.view = view;
+        this.pages = new long[frames];
+        this.t1 = new LinkedHashSet<>();
+        this.t2 = new LinkedHashSet<>();
+        this.b1 = new LinkedHashSet<>();
+        this.b2 = new LinkedHashSet<>();
+    }
+
+    @Override
+    public void Loaded(int frame, long page) {
+        t1.remove(frame);
+        t2.remove(frame);
+        pages[frame] = page;
+        if (b1.contains(page)) { // evicted too early from T1: give recency more room
+            target = Math.min(capacity, target + Math.max(1, b2.size() / b1.size()));
+            b1.remove(page);
+            t2.add(frame);
+        } else if (b2.contains(page)) { // evicted too early from T2: give frequency more room
+            target = Math.max(0, target - Math.max(1, b1.size() / b2.size()));
+            b2.remove(page);
+            t2.add(frame);
+        } else {
+            t1.add(frame);
+        }
+        while (t1.size() + b1.size() > capacity && !b1.isEmpty()) RemoveOldest(b1);
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty()) RemoveOldest(b2);
+    }
+
+    @Override
+    public void Released(int frame) {
+        t1.remove(frame);
+        t2.remove(frame);
+    }
+
+    @Override
+    public int SelectVictim() {
+        for (int budget = 2 * (t1.size() + t2.size()) + 1; budget > 0 && !(t1.isEmpty() && t2.isEmpty()); budget--) {
+            boolean fromT1 = !t1.isEmpty() && (t1.size() >= Math.max(1, target) || t2.isEmpty());
+            LinkedHashSet<Integer> list = fromT1 ? t1 : t2;
+            int frame = list.iterator().next();
+            list.remove(frame);
+            if (!view.IsEvictable(frame)) {
+                list.add(frame);
+                continue;
+            }
+            if (view.IsAccessed(frame)) {
+                view.ClearAccessed(frame);
+                t2.add(frame);
+                continue;
+            }
+            (fromT1 ? b1 : b2).add(pages[frame]);
+            return frame;
+        }
+        return -1;
+    }
+
+    private static void RemoveOldest(LinkedHashSet<Long> ghosts) {
+        Iterator<Long> it = ghosts.iterator();
+        it.next();
+        it.remove();
+    }
+}
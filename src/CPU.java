@@ -0,0 +1,121 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One simulated CPU: the process it is running, its own run queue (owned by its scheduling policy) and its own TLB.
+ * Other CPUs enqueue wakeups here and steal from here, so the policy is only touched under queueLock
+ */
+public class CPU {
+    private final int id;
+    final ReentrantLock lock; // guards current and switching on this CPU
+    volatile KernelandProcess current; // reference to KernelandProcess currently running on this CPU
+    private final SchedulingPolicy policy;
+    private final ReentrantLock queueLock; // guards policy
+    private final AtomicInteger queued; // read without the lock when looking for a CPU to steal from
+    private final SchedulerClock clock;
+    private final TLB tlb;
+
+    /**
+     * @param id Index of the CPU
+     * @param policy This CPU's own scheduling policy instance
+     * @param clock Scheduler time source, for run-queue and CPU-time accounting
+     * @param tlb This CPU's TLB
+     */
+    public CPU(int id, SchedulingPolicy policy, SchedulerClock clock, TLB tlb) {
+        this.id = id;
+        this.lock = new ReentrantLock();
+        this.current = null;
+        this.policy = policy;
+        this.queueLock = new ReentrantLock();
+        this.queued = new AtomicInteger();
+        this.clock = clock;
+        this.tlb = tlb;
+    }
+
+    int GetId() { return this.id; }
+
+    /**
+     * Retrieves this CPU's TLB, which is handed to whichever process is dispatched here
+     * @return TLB of this CPU
+     */
+    TLB GetTLB() { return this.tlb; }
+
+    /**
+     * Retrieves the number of processes waiting in this CPU's run queue
+     * @return Number of queued processes
+     */
+    int GetQueued() { return this.queued.get(); }
+
+    /**
+     * Adds a ready process to this CPU's run queue
+     * @param kp A respective KernelandProcess
+     */
+    void Enqueue(KernelandProcess kp) {
+        kp.SetEnqueuedNanos(clock.NowNanos());
+        queueLock.lock();
+        try {
+            policy.Enqueue(kp);
+            queued.incrementAndGet();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the process the policy wants to run next
+     * @return Next KernelandProcess, null if the run queue is empty
+     */
+    KernelandProcess PickNext() {
+        queueLock.lock();
+        try {
+            KernelandProcess kp = policy.PickNext();
+            if (kp != null) queued.decrementAndGet();
+            return kp;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a process from this CPU's run queue on behalf of an idle CPU
+     * @return Stolen KernelandProcess, null if there was nothing to steal
+     */
+    KernelandProcess Steal() {
+        queueLock.lock();
+        try {
+            KernelandProcess kp = policy.Steal();
+            if (kp != null) queued.decrementAndGet();
+            return kp;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Charges a process leaving this CPU for the time it ran
+     * @param kp The KernelandProcess leaving the CPU
+     * @param preempted True if its quantum expired, false if it blocked
+     */
+    void Account(KernelandProcess kp, boolean preempted) {
+        queueLock.lock();
+        try {
+            policy.Account(kp, clock.NowNanos() - kp.GetDispatchedNanos(), preempted);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves a snapshot of the queued processes
+     * @return Queued processes
+     */
+    List<KernelandProcess> Queued() {
+        queueLock.lock();
+        try {
+            return policy.Queued();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * CFS-style fair scheduling: the process with the smallest virtual runtime runs next, and virtual runtime
+ * grows by the time actually spent on the CPU divided by the priority weight
+ */
+public class CfsPolicy implements SchedulingPolicy {
+    private final TreeSet<KernelandProcess> queued;
+
+    public CfsPolicy() {
+        this.queued = new TreeSet<>(Comparator.comparingLong(KernelandProcess::GetVirtualRuntime).thenComparingInt(KernelandProcess::GetPid));
+    }
+
+    /**
+     * New and waking processes are placed at the current minimum virtual runtime, so a long sleep does not buy a burst of CPU
+     */
+    @Override
+    public void Enqueue(KernelandProcess kp) {
+        if (!queued.isEmpty()) kp.SetVirtualRuntime(Math.max(kp.GetVirtualRuntime(), queued.first().GetVirtualRuntime()));
+        queued.add(kp);
+    }
+
+    @Override
+    public KernelandProcess PickNext() {
+        return queued.pollFirst();
+    }
+
+    @Override
+    public KernelandProcess Steal() {
+        return queued.pollLast();
+    }
+
+    @Override
+    public void Account(KernelandProcess kp, long ranNanos, boolean preempted) {
+        kp.SetVirtualRuntime(kp.GetVirtualRuntime() + ranNanos / SchedulingPolicy.Weight(kp.GetPriority()));
+    }
+
+    @Override
+    public List<KernelandProcess> Queued() {
+        return new ArrayList<>(queued);
+    }
+}
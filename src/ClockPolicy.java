@@ -0,0 +1,35 @@
+/**
+ * Clock: a hand sweeps the frames in order, clearing accessed bits, and evicts the first page it finds
+ * that was not referenced since the hand last passed it
+ */
+public class ClockPolicy implements PageReplacementPolicy {
+    private final int frames;
+    private final Frames view;
+    private int hand;
+
+    public ClockPolicy(int frames, Frames view) {
+        this.frames = frames;
+        this.view = view;
+    }
+
+    @Override
+    public void Loaded(int frame, long page) {}
+
+    @Override
+    public void Released(int frame) {}
+
+    @Override
+    public int SelectVictim() {
+        for (int n=0; n<2*frames; n++) { // after one lap every accessed bit is clear
+            int frame = hand;
+            hand = (hand + 1) % frames;
+            if (!view.IsEvictable(frame)) continue;
+            if (view.IsAccessed(frame)) {
+                view.ClearAccessed(frame);
+                continue;
+            }
+            return frame;
+        }
+        return -1;
+    }
+}
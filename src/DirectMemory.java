@@ -0,0 +1,59 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Physical memory off the Java heap, as direct ByteBuffers of 1GB each, so the simulated machine can have many GB of
+ * RAM without growing the heap or the garbage collector's work. The JVM caps direct memory at the heap size unless
+ * -XX:MaxDirectMemorySize says otherwise
+ */
+public class DirectMemory implements PhysicalMemory {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private final ByteBuffer[] chunks;
+    private final long size;
+
+    /**
+     * @param size Size in bytes
+     */
+    public DirectMemory(long size) {
+        this.size = size;
+        this.chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+        for (int i=0; i<chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect((int) Math.min(1L << CHUNK_BITS, size - ((long) i << CHUNK_BITS)));
+        }
+    }
+
+    private ByteBuffer Chunk(long address) { return chunks[(int) (address >>> CHUNK_BITS)]; }
+    private static int Offset(long address) { return (int) (address & CHUNK_MASK); }
+
+    @Override
+    public byte Get(long address) { return Chunk(address).get(Offset(address)); }
+    @Override
+    public void Put(long address, byte value) { Chunk(address).put(Offset(address), value); }
+    @Override
+    public void Read(long address, byte[] buffer, int offset, int length) {
+        Chunk(address).get(Offset(address), buffer, offset, length);
+    }
+    @Override
+    public void Write(long address, byte[] buffer, int offset, int length) {
+        Chunk(address).put(Offset(address), buffer, offset, length);
+    }
+    @Override
+    public void Copy(long from, long to, int length) {
+        Chunk(to).put(Offset(to), Chunk(from), Offset(from), length);
+    }
+    @Override
+    public void Fill(long address, int length, byte value) {
+        ByteBuffer chunk = Chunk(address);
+        for (int i=Offset(address); i<Offset(address)+length; i++) chunk.put(i, value);
+    }
+    @Override
+    public void CopyTo(long address, ByteBuffer target, int index, int length) {
+        target.put(index, Chunk(address), Offset(address), length);
+    }
+    @Override
+    public void CopyFrom(ByteBuffer source, int index, long address, int length) {
+        Chunk(address).put(Offset(address), source, index, length);
+    }
+    @Override
+    public long Size() { return size; }
+}
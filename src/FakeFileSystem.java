@@ -1,13 +1,17 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class FakeFileSystem implements Device {
     private final RandomAccessFile[] fakeFile;
+    private final ReentrantLock lock; // file I/O happens under it, so it must not pin virtual threads like a monitor does
     public FakeFileSystem(String filename) throws Exception {
         if (filename == null || filename.isEmpty()) throw new Exception("File name is null or empty");
         this.fakeFile = new RandomAccessFile[10];
+        this.lock = new ReentrantLock();
         Arrays.fill(fakeFile, null);
     }
 
@@ -20,7 +24,8 @@ public class FakeFileSystem implements Device {
     public int Open(String s) {
         System.out.println("Opening fake file, finding location");
         for (int i=0; i<10; i++) {
-            synchronized (this.fakeFile){
+            lock.lock();
+            try {
                 if (fakeFile[i] == null) {
                     // already check filename to see if it is null or empty
                     try {
@@ -32,6 +37,8 @@ public class FakeFileSystem implements Device {
                         throw new RuntimeException(e);
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
         System.out.println("Fake File: no entries available");
@@ -61,15 +68,16 @@ public class FakeFileSystem implements Device {
     @Override
     public byte[] Read(int id, int size) {
         System.out.println("Reading from fake file at id " + id);
-        synchronized (this.fakeFile){
+        lock.lock();
+        try {
             byte[] create = new byte[size];
-            try {
-                System.out.println("Reading " + size + " bytes from fake file system");
-                if (fakeFile[id].read(create) > 0) return create; // not end of the file
-                return null;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            System.out.println("Reading " + size + " bytes from fake file system");
+            if (fakeFile[id].read(create) > 0) return create; // not end of the file
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -84,6 +92,15 @@ public class FakeFileSystem implements Device {
         catch (IOException e) { throw new RuntimeException(e); }
     }
 
+    /**
+     * Retrieves the channel of an open file, e.g. to map it into memory
+     * @param id Some RandomAccessFile
+     * @return Its FileChannel
+     */
+    public FileChannel GetChannel(int id) {
+        return fakeFile[id].getChannel();
+    }
+
     /**
      * Writes data.length bytes to a file
      * @param id Some RandomAccessFile
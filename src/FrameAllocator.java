@@ -0,0 +1,209 @@
+/**
+ * Physical frame allocator. A long[] bitmap holds one bit per frame (1 = free); two summary bitmaps mark the words that
+ * have any free frame and the words that are entirely free, so a single frame is found with two numberOfTrailingZeros
+ * calls instead of a scan, even with millions of frames.
+ * Contiguous runs are handed out buddy style: a power-of-two block aligned to its own size. Block and buddy come from
+ * the same bitmap, so freeing a block coalesces it with its free neighbours without any per-order free lists.
+ * Not thread-safe; the kernel only calls it under its memory lock
+ */
+public class FrameAllocator {
+    private final int frames;
+    private final long[] free; // bit per frame, 1 = free
+    private final long[] partial; // bit per word of free: the word has a free frame
+    private final long[] full; // bit per word of free: every frame of the word is free
+    private int freeFrames;
+    private int hint; // partial word where the last single-frame search ended
+    private int runHint; // partial word where the last small-run search ended
+    private long allocations, failures;
+
+    /**
+     * @param frames Number of physical frames to manage
+     */
+    public FrameAllocator(int frames) {
+        if (frames < 1) throw new IllegalArgumentException("Need at least one frame");
+        this.frames = frames;
+        int words = (frames + 63) >>> 6;
+        this.free = new long[words];
+        this.partial = new long[(words + 63) >>> 6];
+        this.full = new long[(words + 63) >>> 6];
+        for (int w=0; w<words; w++) {
+            int bits = Math.min(64, frames - (w << 6));
+            free[w] = bits == 64 ? -1L : (1L << bits) - 1;
+            UpdateSummary(w);
+        }
+        this.freeFrames = frames;
+    }
+
+    /**
+     * Allocates one frame
+     * @return Frame number, -1 if every frame is in use
+     */
+    public int Allocate() {
+        if (freeFrames == 0) {
+            failures++;
+            return -1;
+        }
+        int summaryWord = hint;
+        while (partial[summaryWord] == 0) summaryWord = (summaryWord + 1) % partial.length; // freeFrames > 0, so this ends
+        hint = summaryWord;
+        int word = (summaryWord << 6) + Long.numberOfTrailingZeros(partial[summaryWord]);
+        int bit = Long.numberOfTrailingZeros(free[word]);
+        free[word] &= ~(1L << bit);
+        UpdateSummary(word);
+        freeFrames--;
+        allocations++;
+        return (word << 6) + bit;
+    }
+
+    /**
+     * Allocates a contiguous, size-aligned block of 2^order frames
+     * @param order Log2 of the number of frames
+     * @return First frame of the block, -1 if no aligned block of that size is free
+     */
+    public int AllocateRun(int order) {
+        if (order == 0) return Allocate();
+        int first = order < 6 ? FindRunInWords(order) : FindRunOfWords(order - 6);
+        if (first == -1 || first + (1 << order) > frames) {
+            failures++;
+            return -1;
+        }
+        SetRange(first, 1 << order, false);
+        allocations++;
+        return first;
+    }
+
+    /**
+     * Returns a frame to the allocator
+     * @param frame Frame number from Allocate
+     */
+    public void Free(int frame) {
+        FreeRun(frame, 0);
+    }
+
+    /**
+     * Returns a block to the allocator
+     * @param first First frame of the block
+     * @param order Log2 of the number of frames, as passed to AllocateRun
+     */
+    public void FreeRun(int first, int order) {
+        int count = 1 << order;
+        for (int i=first; i<first+count; i++) {
+            if ((free[i >>> 6] & (1L << i)) != 0) throw new IllegalStateException("Frame " + i + " freed twice");
+        }
+        SetRange(first, count, true);
+    }
+
+    /**
+     * Flags whether a frame is allocated
+     * @param frame Frame number
+     * @return True if in use
+     */
+    public boolean IsAllocated(int frame) {
+        return (free[frame >>> 6] & (1L << frame)) == 0;
+    }
+
+    /**
+     * Finds an aligned run of 2^order free frames inside single words (order below 6)
+     */
+    private int FindRunInWords(int order) {
+        int length = 1 << order;
+        long aligned = AlignedMask(order);
+        for (int n=0; n<partial.length; n++) {
+            int s = (runHint + n) % partial.length; // resume where the last search succeeded
+            for (long summary = partial[s]; summary != 0; summary &= summary - 1) {
+                int word = (s << 6) + Long.numberOfTrailingZeros(summary);
+                long run = free[word];
+                for (int shift=1; shift<length; shift <<= 1) run &= run >>> shift; // bit i set: frames i..i+length-1 free
+                run &= aligned;
+                if (run != 0) {
+                    runHint = s;
+                    return (word << 6) + Long.numberOfTrailingZeros(run);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds an aligned run of 2^wordOrder entirely free words, for blocks of 64 frames or more
+     */
+    private int FindRunOfWords(int wordOrder) {
+        int length = 1 << wordOrder;
+        if (wordOrder < 6) {
+            long aligned = AlignedMask(wordOrder);
+            for (int s=0; s<full.length; s++) {
+                long run = full[s];
+                for (int shift=1; shift<length; shift <<= 1) run &= run >>> shift;
+                run &= aligned;
+                if (run != 0) return ((s << 6) + Long.numberOfTrailingZeros(run)) << 6;
+            }
+            return -1;
+        }
+        int summaryWords = length >>> 6;
+        for (int s=0; s + summaryWords <= full.length; s += summaryWords) {
+            boolean allFree = true;
+            for (int i=s; i<s+summaryWords && allFree; i++) allFree = full[i] == -1L;
+            if (allFree) return s << 12;
+        }
+        return -1;
+    }
+
+    /**
+     * Bits at every multiple of 2^order within a word
+     */
+    private static long AlignedMask(int order) {
+        long mask = 0;
+        for (int i=0; i<64; i += 1 << order) mask |= 1L << i;
+        return mask;
+    }
+
+    private void SetRange(int first, int count, boolean isFree) {
+        for (int i=first; i<first+count; ) {
+            int word = i >>> 6, bit = i & 63;
+            int bits = Math.min(64 - bit, first + count - i);
+            long mask = bits == 64 ? -1L : ((1L << bits) - 1) << bit;
+            free[word] = isFree ? free[word] | mask : free[word] & ~mask;
+            UpdateSummary(word);
+            i += bits;
+        }
+        freeFrames += isFree ? count : -count;
+    }
+
+    private void UpdateSummary(int word) {
+        int s = word >>> 6;
+        long bit = 1L << word;
+        if (free[word] != 0) partial[s] |= bit; else partial[s] &= ~bit;
+        if (free[word] == -1L) full[s] |= bit; else full[s] &= ~bit;
+    }
+
+    public int GetFrames() { return frames; }
+    public int GetFreeFrames() { return freeFrames; }
+    public long GetAllocations() { return allocations; }
+    public long GetFailures() { return failures; }
+
+    /**
+     * Finds the largest aligned block that could still be allocated
+     * @return Its order, -1 if every frame is in use
+     */
+    public int GetLargestFreeOrder() {
+        for (int order = 31 - Integer.numberOfLeadingZeros(frames); order > 0; order--) {
+            int first = order < 6 ? FindRunInWords(order) : FindRunOfWords(order - 6);
+            if (first != -1 && first + (1 << order) <= frames) return order;
+        }
+        return freeFrames > 0 ? 0 : -1;
+    }
+
+    /**
+     * External fragmentation: how much of the free memory is not usable as one block
+     * @return 0 when all free frames form one block, approaching 1 when they are scattered
+     */
+    public double GetFragmentation() {
+        if (freeFrames == 0) return 0;
+        return 1.0 - (double) (1 << Math.max(0, GetLargestFreeOrder())) / freeFrames;
+    }
+
+    public String toString() {
+        return "Frames: " + (frames - freeFrames) + "/" + frames + " in use, largest free block 2^" + GetLargestFreeOrder()
+                + ", fragmentation " + String.format("%.2f", GetFragmentation());
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.Random;
+
+/**
+ * Exercises the frame allocator with a large simulated memory: fills it, frees a random half, then mixes
+ * single-frame and contiguous allocations, reporting time per operation and fragmentation.
+ * The linear boolean scan the kernel used before is timed on the same pattern for comparison.
+ * Usage: FrameAllocatorBenchmark [frames] [seed]
+ */
+public class FrameAllocatorBenchmark {
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 412;
+
+        FrameAllocator allocator = new FrameAllocator(frames);
+        long start = System.nanoTime();
+        for (int i=0; i<frames; i++) allocator.Allocate();
+        long fill = System.nanoTime() - start;
+
+        Random random = new Random(seed);
+        for (int i=0; i<frames; i++) if (random.nextBoolean()) allocator.Free(i);
+        System.out.println("After freeing a random half: " + allocator);
+
+        int operations = frames / 4;
+        start = System.nanoTime();
+        for (int i=0; i<operations; i++) allocator.Allocate();
+        long refill = System.nanoTime() - start;
+        System.out.println("Fill: " + fill / frames + "ns/frame, refill of scattered frames: " + refill / operations + "ns/frame");
+
+        allocator = new FrameAllocator(frames);
+        int runs = 0, failed = 0;
+        start = System.nanoTime();
+        for (int i=0; i<frames / 16; i++) {
+            int order = random.nextInt(5); // 1 to 16 frames
+            int first = allocator.AllocateRun(order);
+            if (first == -1) { failed++; continue; }
+            runs++;
+            if (random.nextInt(3) == 0) allocator.FreeRun(first, order);
+        }
+        long mixed = System.nanoTime() - start;
+        System.out.println("Contiguous runs: " + runs + " allocated, " + failed + " failed, " + mixed / Math.max(1, runs + failed) + "ns/run");
+        System.out.println(allocator);
+
+        boolean[] inUse = new boolean[Math.min(frames, 1 << 16)]; // the old scan is quadratic, so only a slice is timed
+        start = System.nanoTime();
+        for (int n=0; n<inUse.length; n++) {
+            for (int i=0; i<inUse.length; i++) if (!inUse[i]) { inUse[i] = true; break; }
+        }
+        long linear = System.nanoTime() - start;
+        System.out.println("Linear scan fill of " + inUse.length + " frames: " + linear / inUse.length + "ns/frame");
+    }
+}
@@ -1,9 +1,9 @@
 public class GoodbyeWorld extends UserlandProcess {
     @Override
     public void run() {
-        Write(6200, (byte) 10);
-        //Read(3100); // Read from address already in TLB
-        int startAddr = OS.AllocateMemory(3072);
+        int startAddr = OS.AllocateMemory(3072); // pages have to be allocated before they are touched
+        Write(startAddr + 2100, (byte) 10); // third page, which stays allocated after the partial free below
+        //Read(startAddr + 2100); // Read from address already in TLB
         OS.FreeMemory(startAddr, 2048);
         while (true) { // infinite loop as per assignment requirements
             System.out.println("Goodbye World");
@@ -14,41 +14,4 @@ public class GoodbyeWorld extends UserlandProcess {
             OS.Sleep(50);
         }
     }
-
-    @Override
-    byte Read(int address) {
-        int pageNumber = address/1024; // Page size is 1024 or 1KB
-        int virtualOffset = address%1024;
-        for (int[] ints : TLB) {
-            if (ints[0] == pageNumber) { // Page number is found, check mapping
-                int physicalPageNumber = ints[1];
-                int physicalAddress = physicalPageNumber * 1024 + virtualOffset; // Retrieve physical address based on mapping
-                System.out.println("Mapping is found in TLB: byte value " + memory[physicalAddress]);
-                return memory[physicalAddress];
-            }
-        }
-        // not found, perform OS call and retry with new TLB
-        OS.GetMapping(pageNumber);
-        return Read(pageNumber);
-    }
-
-    @Override
-    void Write(int address, byte value) {
-        int pageNumber = address/1024; // Page size is 1024 or 1KB
-        int virtualOffset = address%1024;
-
-        for (int[] ints : TLB) {
-            if (ints[0] == pageNumber) { // Page number is found, check mapping
-                int physicalPageNumber = ints[1];
-                int physicalAddress = physicalPageNumber * 1024 + virtualOffset; // Retrieve physical address based on mapping
-                System.out.println("TLB mapping is found... " + address);
-                memory[physicalAddress] = value;
-                return;
-            }
-        }
-        // TLB mapping not found, retry
-        System.out.println("TLB mapping is not found, writing to new random spot in memory... " + address);
-        OS.GetMapping(pageNumber);
-        Write(address, value);
-    }
 }
@@ -0,0 +1,48 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Physical memory as one byte array on the Java heap; at most 2GB, and scanned by the garbage collector
+ */
+public class HeapMemory implements PhysicalMemory {
+    private final byte[] bytes;
+
+    /**
+     * @param size Size in bytes, at most Integer.MAX_VALUE
+     */
+    public HeapMemory(long size) {
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Heap memory holds at most " + Integer.MAX_VALUE + " bytes, use DIRECT for more");
+        this.bytes = new byte[(int) size];
+    }
+
+    @Override
+    public byte Get(long address) { return bytes[(int) address]; }
+    @Override
+    public void Put(long address, byte value) { bytes[(int) address] = value; }
+    @Override
+    public void Read(long address, byte[] buffer, int offset, int length) {
+        System.arraycopy(bytes, (int) address, buffer, offset, length);
+    }
+    @Override
+    public void Write(long address, byte[] buffer, int offset, int length) {
+        System.arraycopy(buffer, offset, bytes, (int) address, length);
+    }
+    @Override
+    public void Copy(long from, long to, int length) {
+        System.arraycopy(bytes, (int) from, bytes, (int) to, length);
+    }
+    @Override
+    public void Fill(long address, int length, byte value) {
+        Arrays.fill(bytes, (int) address, (int) address + length, value);
+    }
+    @Override
+    public void CopyTo(long address, ByteBuffer target, int index, int length) {
+        target.put(index, bytes, (int) address, length);
+    }
+    @Override
+    public void CopyFrom(ByteBuffer source, int index, long address, int length) {
+        source.get(index, bytes, (int) address, length);
+    }
+    @Override
+    public long Size() { return bytes.length; }
+}
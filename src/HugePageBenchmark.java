@@ -0,0 +1,54 @@
+/**
+ * Scans a buffer sequentially, first backed by ordinary 1KB pages and then by huge pages, and reports the TLB misses
+ * and time per pass of each, along with how many huge pages were mapped, fell back to ordinary pages or were split.
+ * Both scans run once untimed first, so the JIT has compiled both paths before anything is measured.
+ * With fewer frames than the buffer needs, huge pages get split as their pages are evicted.
+ * Usage: HugePageBenchmark [megabytes] [hugePageKB] [passes] [frames]
+ */
+public class HugePageBenchmark {
+    private static int bytes, passes;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int hugePageKB = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        passes = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int frames = args.length > 3 ? Integer.parseInt(args[3]) : megabytes * 1024 + 1024;
+        bytes = megabytes << 20;
+
+        OS.Startup(new Scanner(), new KernelConfig().SetSeed(412).SetPhysicalFrames(frames).SetHugePageSize(hugePageKB));
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the scans in one process, so the TLB counters are its own
+     */
+    static class Scanner extends UserlandProcess {
+        @Override
+        public void run() {
+            System.out.println("Sequential scan of " + (bytes >> 20) + "MB, every 64th byte, " + passes + " passes");
+            for (int round=0; round<2; round++) {
+                String ordinary = Scan(false), huge = Scan(true);
+                if (round == 1) System.out.println(ordinary + "\n" + huge);
+            }
+            Kernel kernel = OS.pKernel;
+            System.out.println("Huge pages: " + kernel.GetHugePageFaults() + " mapped, " + kernel.GetHugePageFallbacks() + " fell back to ordinary pages, "
+                    + kernel.GetHugePageSplits() + " split; " + kernel.GetEvictions() + " evictions");
+            System.exit(0);
+        }
+
+        private String Scan(boolean hugePages) {
+            int address = OS.AllocateMemory(bytes, hugePages);
+            for (int i=0; i<bytes; i+=1024) Write(address + i, (byte) 1); // fault everything in first
+            long misses = mmu.GetMisses(), start = System.nanoTime();
+            long sum = 0;
+            for (int pass=0; pass<passes; pass++) {
+                for (int i=0; i<bytes; i+=64) sum += Read(address + i);
+            }
+            long nanos = System.nanoTime() - start;
+            long accesses = (long) passes * (bytes / 64);
+            OS.FreeMemory(address, bytes);
+            return (hugePages ? "Huge pages:     " : "Ordinary pages: ") + (mmu.GetMisses() - misses) / passes + " TLB misses per pass, "
+                    + nanos / accesses + "ns per access (checksum " + sum + ")";
+        }
+    }
+}
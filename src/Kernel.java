@@ -1,14 +1,85 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class Kernel implements Device {
     private static Scheduler pScheduler;
     private static VirtualFileSystem VFS;
-    private final boolean[] inUseMemoryBlock;
+    private final FrameAllocator frameAllocator; // free/used state of every physical page
+    private final int[] frameReferences; // page table entries (and messages in flight) pointing at each physical page
+    private final KernelandProcess[] frameOwners; // reverse map: process whose page table holds each frame, null if free
+    private final int[] framePages; // reverse map: virtual page each frame backs in its owner
+    private final Map<Integer, List<Holder>> frameSharers; // reverse map: other page table entries holding a frame, after a fork or a merge
+    private final Map<String, SharedSegment> sharedSegments; // segments mapped by OS.MapShared, by name
+    private SwapManager swap; // null until OS.Startup opens the swap file
+    private final int swapForceBatch;
+    private final PageReplacementPolicy replacement; // picks the page to evict when the frames run out
+    private final SamePageMerger merger; // null unless enabled in KernelConfig
+    private long referenceClock; // references the pager has seen (TLB misses), the replacement policy's notion of time
+    private long pageFaults, majorFaults, evictions, cleanEvictions;
+    private final int hugeOrder; // log2 of the pages in a huge page
+    private long hugePageFaults, hugePageFallbacks, hugePageSplits;
+    private static final int MIN_READ_AHEAD = 4; // first window of a stream that just turned sequential
+    private final int maxReadAhead; // largest read-ahead window in pages, 0 if read-ahead is off
+    private long prefetched, prefetchHits, prefetchWasted;
+    private final byte workingSetMask; // history bits of the samples in the working-set window
+    private final boolean loadControl; // the scheduler suspends processes when the working sets do not fit
+    private final ScheduledExecutorService sampler; // null unless working sets are sampled
+    private long lastSampleNanos;
+    private final ReentrantLock memoryLock; // CPUs fault and allocate concurrently; page tables and frames change under it
+    private final LatencyStats sendLatency; // time spent inside SendMessage
+    private final LatencyStats deliveryLatency; // time from SendMessage queueing a message until its receiver takes it
+    private final LatencyStats callLatency; // OS.Call round trip, request sent until reply received
+    private final AtomicInteger nextCorrelationId;
     /**
      * Constructs a new scheduler
      */
     public Kernel() throws Exception {
-        pScheduler = new Scheduler();
+        this(new KernelConfig());
+    }
+
+    /**
+     * Constructs a new scheduler using the given startup options
+     * @param config Startup options for the simulated machine
+     */
+    public Kernel(KernelConfig config) throws Exception {
+        pScheduler = new Scheduler(this, config);
         VFS = new VirtualFileSystem();
-        inUseMemoryBlock = new boolean[100]; // All values are initially False
+        frameAllocator = new FrameAllocator(config.GetPhysicalFrames());
+        frameReferences = new int[config.GetPhysicalFrames()];
+        frameOwners = new KernelandProcess[config.GetPhysicalFrames()];
+        framePages = new int[config.GetPhysicalFrames()];
+        frameSharers = new HashMap<>();
+        sharedSegments = new HashMap<>();
+        swapForceBatch = config.GetSwapForceBatch();
+        hugeOrder = Integer.numberOfTrailingZeros(config.GetHugePageSize());
+        maxReadAhead = config.GetReadAhead();
+        replacement = PageReplacementPolicy.Create(config.GetPageReplacement(), config.GetPhysicalFrames(), new FrameView(), config);
+        UserlandProcess.memory = PhysicalMemory.Create(config.GetPhysicalMemory(), config.GetPhysicalFrames() * 1024L);
+        memoryLock = new ReentrantLock();
+        merger = config.GetMergePagesPerScan() == 0 ? null : new SamePageMerger(config.GetPhysicalFrames(), new MergeView(), memoryLock, config.GetMergePagesPerScan());
+        if (merger != null) merger.Start(config.GetMergeIntervalMillis());
+        workingSetMask = (byte) (0xff00 >>> config.GetWorkingSetSamples());
+        loadControl = config.IsLoadControl();
+        sampler = config.GetWorkingSetSampleMillis() == 0 ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "working-set-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastSampleNanos = System.nanoTime();
+        if (sampler != null) {
+            sampler.scheduleWithFixedDelay(this::SampleWorkingSets, config.GetWorkingSetSampleMillis(), config.GetWorkingSetSampleMillis(), TimeUnit.MILLISECONDS);
+        }
+        sendLatency = new LatencyStats("Message send latency");
+        deliveryLatency = new LatencyStats("Message delivery latency");
+        callLatency = new LatencyStats("Call round trip latency");
+        nextCorrelationId = new AtomicInteger();
     }
     /**
      * Calls Scheduler's CreateProcess()
@@ -25,6 +96,20 @@ public class Kernel implements Device {
         pScheduler.Sleep(milliseconds);
     }
 
+    /**
+     * Called by a process thread when its userland code returns
+     */
+    public static void ExitProcess() {
+        pScheduler.Exit();
+    }
+
+    /**
+     * Kernel-call boundary; the calling process gives up the CPU here if its quantum expired
+     */
+    public void Cooperate() {
+        pScheduler.Cooperate();
+    }
+
     /**
      * Finds an empty entry in KernelandProcess' array, calls Open from VFS
      * Puts ID from VFS into KernelandProcess' array and returns the index
@@ -116,132 +201,1012 @@ public class Kernel implements Device {
 
     /**
      * Uses the constructor to make a copy of the original message and populates the sender's pid
-     * Finds the target's KernelandProcess
-     * If target's KernelandProcess pid is found, add to message queue
-     * If KernelandProcess is waiting for a message, restore to its proper runnable queue
+     * Finds the target's KernelandProcess and adds the copy to its mailbox without taking any lock
+     * If the target was waiting for a message, the one sender that claims the wakeup restores it to its run queue
+     * Attached pages are unmapped or write-protected here and travel with the message as physical page numbers
      * @param km KernelMessage to make a copy of
+     * @return False if the target does not exist, its mailbox is full, or the attached pages are not all resident
      */
-    public void SendMessage(KernelMessage km) {
+    public boolean SendMessage(KernelMessage km) {
+        long start = pScheduler.GetClock().NowNanos();
+        KernelandProcess target = Post(km, pScheduler.GetCurrentProcess(), start);
+        if (target == null) return false;
+        if (target.mailbox.ClaimWakeup()) pScheduler.RestoreWaitingProcess(target);
+        sendLatency.Record(pScheduler.GetClock().NowNanos() - start);
+        return true;
+    }
+
+    /**
+     * Sends a batch of messages in one kernel entry. Every receiver is woken at most once, and the sender
+     * gives up the CPU at most once, after the whole batch is queued
+     * @param messages KernelMessages to send, in order
+     * @return Number of messages sent; sending stops at the first message that fails, so the rest can be retried
+     */
+    public int SendMessages(KernelMessage[] messages) {
+        long start = pScheduler.GetClock().NowNanos();
+        KernelandProcess sender = pScheduler.GetCurrentProcess();
+        List<KernelandProcess> woken = new ArrayList<>();
+        int sent = 0;
+        for (KernelMessage km : messages) {
+            KernelandProcess target = Post(km, sender, start);
+            if (target == null) break;
+            sent++;
+            if (target.mailbox.ClaimWakeup()) woken.add(target); // later messages to it find the flag already cleared
+        }
+        if (!woken.isEmpty()) pScheduler.RestoreWaitingProcesses(woken);
+        sendLatency.Record(pScheduler.GetClock().NowNanos() - start);
+        return sent;
+    }
+
+    /**
+     * Sends a request tagged with a fresh correlation id and blocks until the matching reply arrives.
+     * If the target is already waiting for a message it runs on this CPU right away instead of going through a run queue
+     * @param targetPid PID of the process to call
+     * @param whatMessage Message type of the request
+     * @param data Request payload
+     * @return Reply message; null if the caller is not a process or the request could not be queued
+     */
+    public KernelMessage Call(int targetPid, int whatMessage, byte[] data) {
+        KernelandProcess kp = pScheduler.GetCurrentProcess();
+        if (kp == null) return null;
+        long start = pScheduler.GetClock().NowNanos();
+        KernelMessage request = new KernelMessage(kp.GetPid(), targetPid, whatMessage, data);
+        int id = nextCorrelationId.incrementAndGet();
+        request.correlationId = id == 0 ? nextCorrelationId.incrementAndGet() : id; // 0 marks plain messages
+        kp.pendingCall.set(request.correlationId);
+        KernelandProcess target = Post(request, kp, start);
+        if (target == null) {
+            kp.pendingCall.set(0);
+            return null;
+        }
+        KernelMessage reply = kp.replies.Poll();
+        if (reply == null) {
+            pScheduler.AwaitReply(target.mailbox.ClaimWakeup() ? target : null);
+            reply = kp.replies.Poll();
+        }
+        if (reply != null) callLatency.Record(pScheduler.GetClock().NowNanos() - start);
+        return reply;
+    }
+
+    /**
+     * Answers a request received from OS.Call and hands the CPU straight back to the caller if it is waiting
+     * @param request The request being answered
+     * @param whatMessage Message type of the reply
+     * @param data Reply payload
+     * @return False if the request was not a call, or was already answered
+     */
+    public boolean Reply(KernelMessage request, int whatMessage, byte[] data) {
+        KernelandProcess caller = pScheduler.GetProcessByPid(request.senderPid);
+        if (caller == null || request.correlationId == 0 || !caller.pendingCall.compareAndSet(request.correlationId, 0)) return false;
+        KernelandProcess kp = pScheduler.GetCurrentProcess();
+        KernelMessage reply = new KernelMessage(kp == null ? -1 : kp.GetPid(), request.senderPid, whatMessage, data);
+        reply.correlationId = request.correlationId;
+        reply.sentNanos = pScheduler.GetClock().NowNanos();
+        caller.replies.Offer(reply); // never full, a caller has one call outstanding
+        if (caller.replies.ClaimWakeup()) pScheduler.HandOff(caller);
+        return true;
+    }
+
+    /**
+     * Copies a message, detaches its pages and queues it in the target's mailbox; waking the target is up to the caller
+     * @param km KernelMessage to make a copy of
+     * @param sender The sending KernelandProcess, null if the caller is not a process
+     * @param sentNanos Scheduler clock time of the send
+     * @return Target KernelandProcess, null if the message was not queued
+     */
+    private KernelandProcess Post(KernelMessage km, KernelandProcess sender, long sentNanos) {
         KernelMessage copy = new KernelMessage(km);
         KernelandProcess target = pScheduler.GetProcessByPid(copy.targetPid);
-        target.kernelMessage.add(copy);
-        if (pScheduler.IsWaiting(target)) pScheduler.RestoreWaitingProcess(target);
+        if (target == null) return null;
+        if (copy.pageMode != KernelMessage.PageMode.NONE && (sender == null || !DetachPages(sender, copy))) return null;
+        copy.sentNanos = sentNanos;
+        if (!target.mailbox.Offer(copy)) {
+            if (copy.frames != null) ReturnPages(sender, copy);
+            return null;
+        }
+        if (copy.frames != null) {
+            memoryLock.lock();
+            try {
+                if (target.memoryReleased) { // the target exited after it was looked up; nobody will read this
+                    DropMessages(target);
+                    return null;
+                }
+            } finally {
+                memoryLock.unlock();
+            }
+        }
+        return target;
     }
 
     /**
      * Checks to see if current process has a message
-     * If so, returns the message off the queue; else, add process to new data structure to hold "waiting" processes
+     * If so, returns the message off its mailbox; else, marks the mailbox as waiting and blocks until a message arrives
      * @return KernelMessage if the current process has a message
      */
     public KernelMessage WaitForMessage() {
-        if (!pScheduler.GetCurrentProcess().kernelMessage.isEmpty()) {
-            return pScheduler.GetCurrentProcess().kernelMessage.remove(0);
+        KernelandProcess kp = pScheduler.GetCurrentProcess();
+        if (kp == null) return null;
+        KernelMessage km = kp.mailbox.Poll();
+        if (km == null) {
+            pScheduler.AppendWaitingProcesses(); // parks until SendMessage restores us
+            km = kp.mailbox.Poll();
+        }
+        if (km == null) return null;
+        Receive(kp, km, pScheduler.GetClock().NowNanos());
+        return km;
+    }
+
+    /**
+     * Takes up to max messages in one kernel entry, blocking only if the mailbox is empty
+     * @param max Most messages to return
+     * @return Messages in arrival order; empty if the caller is not a process or was woken without a message
+     */
+    public KernelMessage[] WaitForMessages(int max) {
+        KernelandProcess kp = pScheduler.GetCurrentProcess();
+        if (kp == null || max < 1) return new KernelMessage[0];
+        KernelMessage km = kp.mailbox.Poll();
+        if (km == null) {
+            pScheduler.AppendWaitingProcesses(); // parks until SendMessage restores us
+            km = kp.mailbox.Poll();
+            if (km == null) return new KernelMessage[0];
+        }
+        List<KernelMessage> batch = new ArrayList<>(Math.min(max, kp.mailbox.GetDepth() + 1));
+        for (; km != null; km = batch.size() < max ? kp.mailbox.Poll() : null) batch.add(km);
+        long now = pScheduler.GetClock().NowNanos();
+        for (KernelMessage received : batch) Receive(kp, received, now);
+        return batch.toArray(new KernelMessage[0]);
+    }
+
+    /**
+     * Finishes delivery of a message taken from the mailbox: maps its pages and records its latency
+     */
+    private void Receive(KernelandProcess kp, KernelMessage km, long nowNanos) {
+        if (km.frames != null) AttachPages(kp, km);
+        deliveryLatency.Record(nowNanos - km.sentNanos);
+    }
+
+    /**
+     * Takes the pages of a message out of the sender's hands: unmapped for TRANSFER, write-protected for SHARE
+     * @param kp The sending KernelandProcess
+     * @param km Message whose pages to detach; its frames are filled in
+     * @return False if the range is invalid, a page is not resident, or a page belongs to a shared segment
+     */
+    private boolean DetachPages(KernelandProcess kp, KernelMessage km) {
+        memoryLock.lock();
+        try {
+            int first = km.pageAddress / 1024;
+            if (km.pageAddress % 1024 != 0 || km.pageCount < 1 || first < 0 || first > PageTable.PAGES - km.pageCount) return false;
+            // bring every page in first; the extra reference pins it, since eviction skips frames with more than one
+            int pinned = 0;
+            for (; pinned<km.pageCount; pinned++) {
+                VirtualToPhysicalMapping mapping = kp.pageTable.Get(first + pinned);
+                if (mapping == null && kp.addressSpace.Contains(first + pinned)) {
+                    mapping = new VirtualToPhysicalMapping();
+                    kp.pageTable.Set(first + pinned, mapping);
+                }
+                if (mapping != null && mapping.hugeOrder > 0) SplitHugePage(kp, first + pinned); // pages leave or get shared one at a time
+                if (mapping == null || mapping.shared || (mapping.physicalPageNumber == -1 && !FaultIn(kp, first + pinned, mapping))) break;
+                frameReferences[mapping.physicalPageNumber]++;
+            }
+            if (pinned < km.pageCount) {
+                for (int i=first; i<first+pinned; i++) frameReferences[kp.pageTable.Get(i).physicalPageNumber]--;
+                return false;
+            }
+            int[] frames = new int[km.pageCount];
+            for (int i=0; i<frames.length; i++) {
+                VirtualToPhysicalMapping mapping = kp.pageTable.Get(first + i);
+                frames[i] = mapping.physicalPageNumber;
+                if (km.pageMode == KernelMessage.PageMode.TRANSFER) {
+                    frameReferences[frames[i]]--; // unpinned; the message now holds the page table's reference
+                    if (mapping.diskPageNumber != -1) swap.FreeSlot(mapping.diskPageNumber);
+                    kp.pageTable.Set(first + i, null);
+                    kp.addressSpace.Free(first + i, 1); // so a later touch segfaults instead of faulting in a blank page
+                } else {
+                    mapping.writable = false; // the pin stays as the message's reference
+                    mapping.copyOnWrite = true;
+                }
+                pScheduler.ShootdownTLB(kp, first + i); // the sender may still hold writable translations for these pages
+            }
+            km.frames = frames;
+            return true;
+        } finally {
+            memoryLock.unlock();
         }
-        if (pScheduler.GetCurrentProcess() != null) pScheduler.AppendWaitingProcesses();
+    }
+
+    /**
+     * Maps the pages carried by a message into the receiver at the first free virtual window and
+     * rewrites pageAddress to that window. Frames still shared with someone else stay copy-on-write
+     * @param kp The receiving KernelandProcess
+     * @param km Delivered message
+     */
+    private void AttachPages(KernelandProcess kp, KernelMessage km) {
+        memoryLock.lock();
+        try {
+            int first = kp.addressSpace.Allocate(km.frames.length);
+            if (first == -1) {
+                System.out.println("No room for " + km.frames.length + " message pages in process " + kp.GetPid() + ", dropping them");
+                for (int frame : km.frames) ReleaseFrame(frame);
+                km.pageAddress = -1;
+            } else {
+                for (int i=0; i<km.frames.length; i++) {
+                    VirtualToPhysicalMapping mapping = new VirtualToPhysicalMapping();
+                    MapFrame(kp, first + i, mapping, km.frames[i]);
+                    mapping.copyOnWrite = frameReferences[km.frames[i]] > 1;
+                    mapping.writable = !mapping.copyOnWrite;
+                    mapping.dirty = true; // no swap copy of these contents exists
+                    kp.pageTable.Set(first + i, mapping);
+                }
+                km.pageAddress = first * 1024;
+            }
+            km.frames = null;
+        } finally {
+            memoryLock.unlock();
+        }
+    }
 
-        return null;
+    /**
+     * Undoes DetachPages when the message could not be queued
+     * @param kp The sending KernelandProcess
+     * @param km Message that was not delivered
+     */
+    private void ReturnPages(KernelandProcess kp, KernelMessage km) {
+        memoryLock.lock();
+        try {
+            int first = km.pageAddress / 1024;
+            for (int i=0; i<km.frames.length; i++) {
+                if (km.pageMode == KernelMessage.PageMode.TRANSFER) {
+                    kp.addressSpace.Reserve(first + i, 1);
+                    VirtualToPhysicalMapping mapping = new VirtualToPhysicalMapping();
+                    MapFrame(kp, first + i, mapping, km.frames[i]);
+                    mapping.copyOnWrite = frameReferences[km.frames[i]] > 1;
+                    mapping.writable = !mapping.copyOnWrite;
+                    mapping.dirty = true;
+                    kp.pageTable.Set(first + i, mapping);
+                } else {
+                    ReleaseFrame(km.frames[i]); // the sender's entry stays copy-on-write until its next write fault
+                }
+            }
+            km.frames = null;
+        } finally {
+            memoryLock.unlock();
+        }
     }
 
+    /**
+     * Gives a write-protected copy-on-write page its own frame, or just re-enables writing if nobody else holds it
+     * @param kp Process that took the fault
+     * @param virtualPageNumber Page that took the fault
+     * @param mapping Page table entry that took a write fault
+     */
+    private void BreakCopyOnWrite(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping) {
+        if (mapping.writable || !mapping.copyOnWrite || mapping.physicalPageNumber == -1) return;
+        int frame = mapping.physicalPageNumber;
+        if (frameReferences[frame] > 1) {
+            int copy = AllocateFrame();
+            if (copy == -1) {
+                // staying read-only would only send the writer back here forever
+                throw new IllegalStateException("Out of memory: process " + kp.GetPid() + " wrote to copy-on-write virtual page " + virtualPageNumber + " and no frame could be evicted");
+            }
+            UserlandProcess.memory.Copy(frame * 1024L, copy * 1024L, 1024);
+            frameReferences[frame]--;
+            MapFrame(kp, virtualPageNumber, mapping, copy);
+        }
+        mapping.writable = true;
+        mapping.copyOnWrite = false;
+    }
+
+    /**
+     * Drops one reference to a physical page and frees it when nothing points at it anymore
+     * @param frame Physical page number
+     */
+    private void ReleaseFrame(int frame) {
+        if (--frameReferences[frame] <= 0) {
+            frameReferences[frame] = 0;
+            frameOwners[frame] = null;
+            frameSharers.remove(frame);
+            replacement.Released(frame);
+            frameAllocator.Free(frame);
+        }
+    }
+
+    /**
+     * Points a page table entry at a frame and records the reverse mapping used by eviction
+     */
+    private void MapFrame(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping, int frame) {
+        mapping.physicalPageNumber = frame;
+        mapping.accessed = true;
+        frameOwners[frame] = kp;
+        framePages[frame] = virtualPageNumber;
+        replacement.Loaded(frame, (long) kp.GetPid() << 32 | virtualPageNumber);
+    }
+
+    /**
+     * Takes a free frame with one reference, evicting a page when physical memory is full
+     * @return Frame number, -1 if every frame is pinned or there is no swap space
+     */
+    private int AllocateFrame() {
+        int frame = frameAllocator.Allocate();
+        if (frame == -1) frame = EvictPage();
+        if (frame != -1) frameReferences[frame] = 1;
+        return frame;
+    }
+
+    /**
+     * Brings a non-resident page into a frame: read back from its swap slot, or zero-filled on first touch
+     * @param kp Process owning the page
+     * @param virtualPageNumber Faulting page
+     * @param mapping Its page table entry
+     * @return False if no frame could be found
+     */
+    private boolean FaultIn(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping) {
+        boolean major = mapping.diskPageNumber != -1;
+        if (!LoadPage(kp, virtualPageNumber, mapping)) return false;
+        if (major) majorFaults++;
+        pageFaults++;
+        kp.pageFaults++;
+        return true;
+    }
+
+    /**
+     * Fills a frame for a page, from its swap slot or with zeros, and maps it; a fault or a read-ahead
+     * @return False if no frame could be found
+     */
+    private boolean LoadPage(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping) {
+        int frame = AllocateFrame();
+        if (frame == -1) return false;
+        if (mapping.diskPageNumber != -1) swap.PageIn(mapping.diskPageNumber, frame);
+        else UserlandProcess.memory.Fill(frame * 1024L, 1024, (byte) 0);
+        MapFrame(kp, virtualPageNumber, mapping, frame);
+        return true;
+    }
+
+    /**
+     * Updates the read-ahead state of a process after a page fault. A fault on the page after the previous fault,
+     * or on the first page past the last read-ahead batch, continues a sequential stream and doubles the window;
+     * any other fault ends the stream and read-ahead with it
+     * @param kp Faulting process
+     * @param virtualPageNumber Faulting page, just brought in
+     */
+    private void ReadAheadOnFault(KernelandProcess kp, int virtualPageNumber) {
+        boolean sequential = virtualPageNumber == kp.lastFaultPage + 1 || virtualPageNumber == kp.readAheadEnd;
+        kp.lastFaultPage = virtualPageNumber;
+        kp.readAheadWindow = sequential ? Math.min(maxReadAhead, Math.max(MIN_READ_AHEAD, kp.readAheadWindow * 2)) : 0;
+        if (kp.readAheadWindow > 0) ReadAhead(kp, virtualPageNumber + 1, kp.readAheadWindow);
+    }
+
+    /**
+     * Counts the first use of a prefetched page. Reaching the middle of the last batch starts the next one, so a
+     * sequential stream keeps running ahead of its faults instead of stalling at the end of every batch
+     * @param kp Process using the page
+     * @param virtualPageNumber Prefetched page
+     * @param mapping Its page table entry
+     */
+    private void ReadAheadOnHit(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping) {
+        mapping.prefetched = false;
+        prefetchHits++;
+        if (virtualPageNumber != kp.readAheadMarker) return;
+        kp.readAheadWindow = Math.min(maxReadAhead, Math.max(MIN_READ_AHEAD, kp.readAheadWindow * 2));
+        ReadAhead(kp, kp.readAheadEnd, kp.readAheadWindow);
+    }
+
+    /**
+     * Brings the pages of a window in ahead of use: paged in from swap or zero-filled, mapped, but left out of the
+     * TLB and marked not accessed, so an unused one is among the first to be evicted again. Stops at the end of the
+     * allocation, at a huge page region, or when no frame is left
+     * @param kp Process to read ahead for
+     * @param from First page of the window
+     * @param window Number of pages
+     */
+    private void ReadAhead(KernelandProcess kp, int from, int window) {
+        int end = from;
+        for (; end < from + window && end < PageTable.PAGES; end++) {
+            VirtualToPhysicalMapping mapping = kp.pageTable.Get(end);
+            boolean fresh = mapping == null;
+            if (fresh) {
+                Map.Entry<Integer, Integer> huge = kp.hugeRegions.floorEntry(end);
+                if (!kp.addressSpace.Contains(end) || (huge != null && end < huge.getKey() + huge.getValue())) break;
+                mapping = new VirtualToPhysicalMapping();
+                kp.pageTable.Set(end, mapping);
+            }
+            if (mapping.physicalPageNumber != -1) continue;
+            if (!LoadPage(kp, end, mapping)) {
+                if (fresh) kp.pageTable.Set(end, null);
+                break;
+            }
+            mapping.prefetched = true;
+            mapping.accessed = false;
+            prefetched++;
+        }
+        kp.readAheadEnd = end;
+        kp.readAheadMarker = end > from ? from + (end - from) / 2 : -1;
+    }
+
+    /**
+     * Pushes the page the replacement policy picks out to swap. Clean pages that already have a slot
+     * (or were never written) are dropped without any I/O
+     * @return The freed frame, -1 if nothing can be evicted
+     */
+    private int EvictPage() {
+        if (swap == null) return -1;
+        int frame = replacement.SelectVictim();
+        if (frame == -1) return -1;
+        List<Holder> holders = Holders(frame);
+        if (holders.get(0).Mapping().hugeOrder > 0) SplitHugePage(holders.get(0).process(), holders.get(0).page()); // only this page goes
+        boolean dirty = false;
+        for (Holder holder : holders) {
+            VirtualToPhysicalMapping mapping = holder.Mapping();
+            mapping.physicalPageNumber = -1;
+            dirty |= mapping.dirty;
+            if (mapping.prefetched) { // read ahead for nothing: the process reads ahead less
+                mapping.prefetched = false;
+                prefetchWasted++;
+                holder.process().readAheadWindow /= 2;
+            }
+            pScheduler.ShootdownTLB(holder.process(), holder.page()); // before the write-back, so no writable entry outlives it
+        }
+        if (dirty) WriteBack(frame, holders);
+        else cleanEvictions++;
+        frameOwners[frame] = null;
+        frameSharers.remove(frame);
+        evictions++;
+        return frame;
+    }
+
+    /**
+     * Writes a dirty page to a swap slot that all its holders then share. A slot is only rewritten in place while
+     * one page table entry holds it; a slot still shared with a forked relative keeps the old contents for it
+     */
+    private void WriteBack(int frame, List<Holder> holders) {
+        for (Holder holder : holders) {
+            VirtualToPhysicalMapping mapping = holder.Mapping();
+            if (mapping.diskPageNumber != -1) swap.FreeSlot(mapping.diskPageNumber); // an unshared slot comes straight back
+        }
+        int slot = swap.AllocateSlot();
+        swap.PageOut(frame, slot);
+        for (int i=0; i<holders.size(); i++) {
+            VirtualToPhysicalMapping mapping = holders.get(i).Mapping();
+            mapping.diskPageNumber = slot;
+            mapping.dirty = false;
+            if (i > 0) swap.ShareSlot(slot);
+        }
+    }
+
+    /**
+     * A page table entry in the reverse map: a virtual page of a process
+     */
+    private record Holder(KernelandProcess process, int page) {
+        VirtualToPhysicalMapping Mapping() { return process.pageTable.Get(page); }
+        boolean Holds(int frame) {
+            VirtualToPhysicalMapping mapping = Mapping();
+            return mapping != null && mapping.physicalPageNumber == frame;
+        }
+    }
+
+    /**
+     * Finds the page table entries holding a frame through the reverse map: its owner's, plus those that came to
+     * share it through a fork or a merge. Entries that stopped holding the frame (copied on write, unmapped) are dropped
+     * @param frame Frame number
+     * @return The holders, null if the frame is free or not every reference is a page table entry found this way
+     * (a message in flight, a page sent with SHARE, or a shared segment)
+     */
+    private List<Holder> Holders(int frame) {
+        KernelandProcess owner = frameOwners[frame];
+        if (owner == null) return null;
+        Holder first = new Holder(owner, framePages[frame]);
+        List<Holder> sharers = frameSharers.get(frame);
+        if (sharers == null) return frameReferences[frame] == 1 && first.Holds(frame) ? List.of(first) : null;
+        sharers.removeIf(holder -> !holder.Holds(frame));
+        List<Holder> holders = new ArrayList<>(frameReferences[frame]);
+        if (first.Holds(frame)) holders.add(first);
+        holders.addAll(sharers);
+        return holders.size() == frameReferences[frame] ? holders : null;
+    }
+
+    /**
+     * Records one more page table entry holding a frame, so eviction and merging can find it
+     */
+    private void AddSharer(int frame, KernelandProcess kp, int virtualPageNumber) {
+        frameSharers.computeIfAbsent(frame, f -> new ArrayList<>()).add(new Holder(kp, virtualPageNumber));
+    }
+
+    /**
+     * Accessed and dirty bits of the frames, as the replacement policy sees them. Accessed bits are kept in
+     * software: clearing one also drops the page from every TLB, so its next reference misses and sets it again
+     */
+    private class FrameView implements PageReplacementPolicy.Frames {
+        @Override
+        public boolean IsEvictable(int frame) {
+            List<Holder> holders = Holders(frame);
+            if (holders == null) return false;
+            if (!IsDirty(frame) || !swap.IsFull()) return true;
+            int slot = holders.get(0).Mapping().diskPageNumber;
+            return holders.size() == 1 && slot != -1 && !swap.IsShared(slot); // can be rewritten in place
+        }
+        @Override
+        public boolean IsAccessed(int frame) {
+            for (Holder holder : Holders(frame)) if (holder.Mapping().accessed) return true;
+            return false;
+        }
+        @Override
+        public void ClearAccessed(int frame) {
+            for (Holder holder : Holders(frame)) {
+                holder.Mapping().accessed = false;
+                pScheduler.ShootdownTLB(holder.process(), holder.page());
+            }
+        }
+        @Override
+        public boolean IsDirty(int frame) {
+            for (Holder holder : Holders(frame)) if (holder.Mapping().dirty) return true;
+            return false;
+        }
+        @Override
+        public void Clean(int frame) {
+            List<Holder> holders = Holders(frame);
+            if (holders.get(0).Mapping().hugeOrder > 0) SplitHugePage(holders.get(0).process(), holders.get(0).page()); // its pages no longer share one dirty bit
+            for (Holder holder : holders) pScheduler.ShootdownTLB(holder.process(), holder.page()); // the next write faults and marks it dirty again
+            WriteBack(frame, holders);
+        }
+        @Override
+        public long Now() { return referenceClock; }
+    }
+
+    /**
+     * Merging of identical frames, as the same-page merging daemon sees it
+     */
+    private class MergeView implements SamePageMerger.Frames {
+        @Override
+        public boolean IsMergeable(int frame) {
+            List<Holder> holders = Holders(frame);
+            return holders != null && holders.get(0).Mapping().hugeOrder == 0; // huge pages stay contiguous
+        }
+        @Override
+        public void WriteProtect(int frame) {
+            for (Holder holder : Holders(frame)) {
+                holder.Mapping().writable = false;
+                holder.Mapping().copyOnWrite = true;
+                pScheduler.ShootdownTLB(holder.process(), holder.page());
+            }
+        }
+        @Override
+        public void Merge(int duplicate, int into) {
+            for (Holder holder : Holders(duplicate)) {
+                holder.Mapping().physicalPageNumber = into; // keeps its dirty bit and slot, which are as good for the same contents
+                frameReferences[into]++;
+                AddSharer(into, holder.process(), holder.page());
+                ReleaseFrame(duplicate);
+            }
+        }
+    }
+
+    /**
+     * Unmaps one page, releasing its frame reference and its swap slot
+     */
+    private void Unmap(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping) {
+        if (mapping.prefetched) prefetchWasted++;
+        if (mapping.physicalPageNumber != -1) ReleaseFrame(mapping.physicalPageNumber); // shared pages stay with the other holders
+        if (mapping.diskPageNumber != -1) swap.FreeSlot(mapping.diskPageNumber);
+        kp.pageTable.Set(virtualPageNumber, null); // its table goes away with the last page
+    }
+
+    /**
+     * Starts a copy of the calling process. The child gets the caller's allocations and a copy-on-write view of
+     * every page: resident frames and swap slots are shared and reference counted, so the cost is one pass over the
+     * page table and no page is copied until one side writes it. Java cannot copy the caller's stack, so the child
+     * runs the given code from its start instead of returning from Fork
+     * @param child Code of the child
+     * @return PID of the child, -1 if the caller is not a running process
+     */
+    public int Fork(UserlandProcess child) {
+        KernelandProcess parent = pScheduler.GetCurrentProcess();
+        if (parent == null) return -1; // only a process running on a CPU has memory to copy
+        KernelandProcess kp = pScheduler.NewProcess(child, parent.GetPriority());
+        memoryLock.lock();
+        try {
+            kp.addressSpace = new AddressSpace(parent.addressSpace);
+            kp.sharedMappings.putAll(parent.sharedMappings);
+            kp.hugeRegions.putAll(parent.hugeRegions);
+            for (SharedSegment segment : kp.sharedMappings.values()) segment.mappings++;
+            for (int i = parent.pageTable.Next(0); i != -1; i = parent.pageTable.Next(i + 1)) {
+                VirtualToPhysicalMapping mapping = parent.pageTable.Get(i);
+                if (mapping.hugeOrder > 0) SplitHugePage(parent, i); // copy-on-write works a page at a time
+                VirtualToPhysicalMapping copy = new VirtualToPhysicalMapping();
+                copy.diskPageNumber = mapping.diskPageNumber;
+                if (mapping.diskPageNumber != -1) swap.ShareSlot(mapping.diskPageNumber);
+                if (mapping.shared) { // shared segments stay shared, not copy-on-write
+                    copy.physicalPageNumber = mapping.physicalPageNumber;
+                    copy.shared = copy.dirty = true;
+                    frameReferences[mapping.physicalPageNumber]++;
+                } else if (mapping.physicalPageNumber != -1) {
+                    AddSharer(mapping.physicalPageNumber, kp, i); // so eviction finds the copy too
+                    frameReferences[mapping.physicalPageNumber]++;
+                    copy.physicalPageNumber = mapping.physicalPageNumber;
+                    copy.dirty = mapping.dirty;
+                    mapping.writable = copy.writable = false;
+                    mapping.copyOnWrite = copy.copyOnWrite = true;
+                }
+                kp.pageTable.Set(i, copy);
+            }
+            pScheduler.ShootdownTLB(parent); // its writable translations must fault from now on
+        } finally {
+            memoryLock.unlock();
+        }
+        pScheduler.Start(kp);
+        return kp.GetPid();
+    }
+
+    /**
+     * Releases every page of a process on termination, including the pages of messages it never read
+     * @param kp The terminated KernelandProcess
+     */
+    public void ReleaseMemory(KernelandProcess kp) {
+        memoryLock.lock();
+        try {
+            kp.memoryReleased = true;
+            DropMessages(kp);
+            while (!kp.sharedMappings.isEmpty()) UnmapShared(kp, kp.sharedMappings.firstKey());
+            for (int i = kp.pageTable.Next(0); i != -1; i = kp.pageTable.Next(i + 1)) Unmap(kp, i, kp.pageTable.Get(i));
+        } finally {
+            memoryLock.unlock();
+        }
+    }
+
+    /**
+     * Working-set sampler, run at a fixed interval: shifts every page's referenced bit into its reference history
+     * and clears it, so a process' working set is the pages it referenced during the last samples of the window.
+     * Like ClearAccessed, clearing the bit drops the page from every TLB, so its next reference comes back through
+     * GetMapping. The history of a suspended process is left alone; it is what the process needs once resumed.
+     * Afterwards load control, if enabled, suspends or resumes processes against the new working sets
+     */
+    void SampleWorkingSets() {
+        memoryLock.lock();
+        try {
+            long now = System.nanoTime();
+            long elapsed = Math.max(1, now - lastSampleNanos);
+            lastSampleNanos = now;
+            for (KernelandProcess kp : pScheduler.GetProcesses()) {
+                kp.faultRate = (int) ((kp.pageFaults - kp.sampledFaults) * 1_000_000_000L / elapsed);
+                kp.sampledFaults = kp.pageFaults;
+                if (kp.suspended) continue;
+                int workingSet = 0;
+                for (int i = kp.pageTable.Next(0); i != -1; i = kp.pageTable.Next(i + 1)) {
+                    VirtualToPhysicalMapping mapping = kp.pageTable.Get(i);
+                    mapping.referenceHistory = (byte) ((mapping.referenceHistory & 0xff) >>> 1 | (mapping.referenced ? 0x80 : 0));
+                    if (mapping.referenced) {
+                        mapping.referenced = false;
+                        pScheduler.ShootdownTLB(kp, i);
+                    }
+                    if ((mapping.referenceHistory & workingSetMask) != 0) workingSet++;
+                }
+                kp.workingSet = workingSet;
+            }
+        } finally {
+            memoryLock.unlock();
+        }
+        if (loadControl) pScheduler.ControlLoad(frameAllocator.GetFrames());
+    }
+
+    /**
+     * Lists every live process with its working set and fault rate as of the last sample
+     * @return One line per process
+     */
+    public String GetWorkingSetReport() {
+        StringBuilder report = new StringBuilder("Working sets (" + frameAllocator.GetFrames() + " frames):");
+        for (KernelandProcess kp : pScheduler.GetProcesses()) {
+            report.append("\n  ").append(kp.GetName()).append(' ').append(kp.GetPid()).append(": ").append(kp.GetWorkingSet())
+                    .append(" pages, ").append(kp.GetFaultRate()).append(" faults/s").append(kp.IsSuspended() ? ", suspended" : "");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Empties the mailbox of a process that ended, releasing the pages of the messages it never read: a TRANSFER
+     * message holds the only reference to its frames, a SHARE message pins the sender's. Called with the memory
+     * lock held, once the owner will not poll its mailbox anymore
+     * @param kp The terminated KernelandProcess
+     */
+    private void DropMessages(KernelandProcess kp) {
+        for (KernelMessage km = kp.mailbox.Poll(); km != null; km = kp.mailbox.Poll()) {
+            if (km.frames == null) continue;
+            for (int frame : km.frames) ReleaseFrame(frame);
+            km.frames = null;
+        }
+    }
+
+    /**
+     * Hands the swap file opened by OS.Startup to the pager
+     * @param id Id of the swap file in the FakeFileSystem
+     */
+    public void AttachSwapFile(int id) {
+        swap = new SwapManager(VFS.GetFFS().GetChannel(id), swapForceBatch);
+    }
+
+    public LatencyStats GetSendLatency() { return sendLatency; }
+    public LatencyStats GetDeliveryLatency() { return deliveryLatency; }
+    public LatencyStats GetCallLatency() { return callLatency; }
+
     /**
      * Maps a virtual page number to a physical page number in TLB
      * @param virtualPageNumber Some virtual page number to map
+     * @param write True for a write fault, which breaks copy-on-write sharing of the page
      */
-    public void GetMapping(int virtualPageNumber) {
-        KernelandProcess kp = pScheduler.GetCurrentProcess();
-        if (kp.virtualPageToPhysicalPage[virtualPageNumber].physicalPageNumber == -1) {
-            System.out.println("Virtual page to physical page mapping equals -1");
-            int available = -1; // No physical pages available
-            // Find physical page in "in use" array and assign it
-            for (int i=0; i< inUseMemoryBlock.length; i++) {
-                if (!inUseMemoryBlock[i]) {
-                    System.out.println("---Assigning page number in memory map index " + i);
-                    kp.SetProcessPhysicalPageNumber(virtualPageNumber, i);
-                    inUseMemoryBlock[i] = true; // Found a physical page,so skip next if clause
-                    available = 0;
-                    break;
+    public void GetMapping(int virtualPageNumber, boolean write) {
+        memoryLock.lock();
+        try {
+            KernelandProcess kp = pScheduler.GetCurrentProcess();
+            VirtualToPhysicalMapping mapping = kp.pageTable.Get(virtualPageNumber);
+            if (mapping == null) {
+                if (!kp.addressSpace.Contains(virtualPageNumber)) {
+                    // no allocation covers this page; the exception ends the process like a segmentation fault
+                    throw new IllegalStateException("Segmentation fault: process " + kp.GetPid() + " touched unmapped virtual page " + virtualPageNumber);
                 }
+                if (FaultInHuge(kp, virtualPageNumber)) {
+                    mapping = kp.pageTable.Get(virtualPageNumber);
+                } else {
+                    mapping = new VirtualToPhysicalMapping(); // first touch of an allocated page
+                    kp.pageTable.Set(virtualPageNumber, mapping);
+                }
+            }
+            boolean fault = mapping.physicalPageNumber == -1;
+            if (fault && !FaultIn(kp, virtualPageNumber, mapping)) {
+                throw new IllegalStateException("Out of memory: process " + kp.GetPid() + " faulted on virtual page " + virtualPageNumber + " and no frame could be evicted");
             }
-            if (available == -1) {
-                System.out.println("Couldn't find a page number, swapping one out");
-                pScheduler.GetRandomProcess();
+            if (maxReadAhead > 0 && (fault || mapping.prefetched)) {
+                frameReferences[mapping.physicalPageNumber]++; // pinned, so reading ahead cannot evict it
+                if (fault) ReadAheadOnFault(kp, virtualPageNumber);
+                else ReadAheadOnHit(kp, virtualPageNumber, mapping);
+                frameReferences[mapping.physicalPageNumber]--;
             }
+            if (write && !mapping.writable) {
+                BreakCopyOnWrite(kp, virtualPageNumber, mapping);
+                pScheduler.ShootdownTLB(kp, virtualPageNumber); // other CPUs may still map the shared frame read-only
+            }
+            if (write && mapping.writable) mapping.dirty = true;
+            int frame = mapping.physicalPageNumber;
+            if (frame != -1 && frameReferences[frame] == 1 && (frameOwners[frame] != kp || framePages[frame] != virtualPageNumber)) {
+                // the other holder of a once-shared frame let go of it; take it over so it can be evicted again
+                frameOwners[frame] = kp;
+                framePages[frame] = virtualPageNumber;
+                frameSharers.remove(frame);
+            }
+            mapping.accessed = mapping.referenced = true;
+            referenceClock++;
+            if (mapping.hugeOrder > 0) {
+                LoadHugePage(kp, virtualPageNumber, mapping, write);
+                return;
+            }
+            // clean pages are loaded read-only, so the first write comes back here and marks them dirty
+            if (mapping.physicalPageNumber != -1) kp.LoadTLB(virtualPageNumber, mapping.physicalPageNumber, mapping.writable && mapping.dirty);
+
+        } finally {
+            memoryLock.unlock();
         }
-        kp.SetRandomTLB(virtualPageNumber);
-        System.out.println("Checking to see if virtual page number already has mapping in TLB...");
-        if (kp.virtualPageToPhysicalPage[virtualPageNumber].physicalPageNumber != -1) {
-            System.out.println("Mapping already exists, copying into TLB");
-            kp.PreserveTLB(virtualPageNumber, kp.virtualPageToPhysicalPage[virtualPageNumber].physicalPageNumber);
+    }
+
+    /**
+     * Maps a whole huge page on the first touch of one of its pages, if the page lies in a huge page region and the
+     * aligned huge page around it is inside the region and untouched
+     * @param kp Faulting process
+     * @param virtualPageNumber Faulting page, not mapped yet
+     * @return False to fault in an ordinary page instead
+     */
+    private boolean FaultInHuge(KernelandProcess kp, int virtualPageNumber) {
+        Map.Entry<Integer, Integer> region = kp.hugeRegions.floorEntry(virtualPageNumber);
+        if (region == null || virtualPageNumber >= region.getKey() + region.getValue()) return false;
+        int pages = 1 << hugeOrder;
+        int first = virtualPageNumber & -pages;
+        if (first < region.getKey() || first + pages > region.getKey() + region.getValue()) return false; // ragged end of the region
+        for (int i=first; i<first+pages; i++) if (kp.pageTable.Get(i) != null) return false; // split earlier, now ordinary pages
+        int frame = frameAllocator.AllocateRun(hugeOrder);
+        if (frame == -1) {
+            hugePageFallbacks++; // no contiguous frames; free memory is too fragmented or too scarce
+            return false;
+        }
+        for (int i=0; i<pages; i++) {
+            VirtualToPhysicalMapping mapping = new VirtualToPhysicalMapping();
+            mapping.hugeOrder = hugeOrder;
+            UserlandProcess.memory.Fill((frame + i) * 1024L, 1024, (byte) 0);
+            frameReferences[frame + i] = 1;
+            MapFrame(kp, first + i, mapping, frame + i);
+            kp.pageTable.Set(first + i, mapping);
+        }
+        hugePageFaults++;
+        pageFaults++;
+        kp.pageFaults++;
+        return true;
+    }
+
+    /**
+     * Loads an intact huge page into the TLB as one entry. The entry cannot tell which of its pages are used or
+     * written, so every page of it is marked accessed, and on a write dirty
+     */
+    private void LoadHugePage(KernelandProcess kp, int virtualPageNumber, VirtualToPhysicalMapping mapping, boolean write) {
+        int first = virtualPageNumber & -(1 << mapping.hugeOrder);
+        for (int i=first; i<first+(1 << mapping.hugeOrder); i++) {
+            VirtualToPhysicalMapping page = kp.pageTable.Get(i);
+            page.accessed = page.referenced = true;
+            if (write) page.dirty = true;
         }
+        kp.LoadHugeTLB(first, mapping.physicalPageNumber - (virtualPageNumber - first), mapping.hugeOrder, mapping.writable && mapping.dirty);
+    }
+
+    /**
+     * Breaks an intact huge page into ordinary pages, so they can be evicted, shared or unmapped one at a time.
+     * The frames stay where they are; only the TLB entry covering all of them goes
+     * @param kp Process mapping the huge page
+     * @param virtualPageNumber Any page of it
+     */
+    private void SplitHugePage(KernelandProcess kp, int virtualPageNumber) {
+        int order = kp.pageTable.Get(virtualPageNumber).hugeOrder;
+        int first = virtualPageNumber & -(1 << order);
+        for (int i=first; i<first+(1 << order); i++) kp.pageTable.Get(i).hugeOrder = 0;
+        pScheduler.ShootdownTLB(kp, first);
+        hugePageSplits++;
     }
 
     /**
-     * Allocates memory to inUseMemoryBlock by calculating pages needed, the start page in contiguous memory; maps physical page number
-     * @param size Amount of memory (multiple of 1024) to allocate
-     * @return Start virtual address in contiguous memory
+     * Reserves a contiguous range of virtual pages in the process' address space. Nothing is mapped yet:
+     * page table entries and physical pages are only created when a page is first touched (GetMapping)
+     * @param size Amount of memory to allocate, rounded up to whole pages
+     * @return Start virtual address in contiguous memory; -1 on failure
      */
     public int AllocateMemory(int size) {
-        int pagesNeeded = size/1024;
-        KernelandProcess kp = pScheduler.GetCurrentProcess();
-        int startPage = FindAvailableMemory(kp, pagesNeeded);
+        return AllocateMemory(size, false);
+    }
 
-        if (startPage == -1) return -1; // Failed to allocate memory
-        else if (startPage + pagesNeeded <= inUseMemoryBlock.length) {
-            System.out.println("Found contiguous block of memory at starting page " + startPage + ", we need " + pagesNeeded + " pages");
-            for (int i=startPage; i < startPage + pagesNeeded; i++) {
-                inUseMemoryBlock[i] = true;
-                System.out.println("Allocating new Virtual to Physical Mapping at " + i);
-                kp.virtualPageToPhysicalPage[i] = new VirtualToPhysicalMapping(); // create new instances of VirtualToPhysicalMapping for every page
-                //kp.SetProcessPhysicalPageNumber(i, kp.GetPhysicalPageNumber(i)); // set correct page number in process' array
-            }
+    /**
+     * Reserves a contiguous range of virtual pages, optionally to be backed by huge pages: the range is aligned to
+     * the huge page size, and the first touch of each whole huge page inside it maps all of it at once to contiguous
+     * frames, which the TLB then caches as a single entry. A huge page falls back to ordinary pages when no
+     * contiguous frames are free, and is split into ordinary pages when one of them is evicted, shared or freed
+     * @param size Amount of memory to allocate, rounded up to whole pages
+     * @param hugePages True to back the range with huge pages where possible
+     * @return Start virtual address in contiguous memory; -1 on failure
+     */
+    public int AllocateMemory(int size, boolean hugePages) {
+        memoryLock.lock();
+        try {
+            int pagesNeeded = (int) ((size + 1023L) / 1024);
+            KernelandProcess kp = pScheduler.GetCurrentProcess();
+            int startPage = hugePages ? kp.addressSpace.AllocateAligned(pagesNeeded, 1 << hugeOrder) : kp.addressSpace.Allocate(pagesNeeded);
+            if (startPage == -1) return -1; // Failed to allocate memory
+            if (hugePages) kp.hugeRegions.put(startPage, pagesNeeded);
+            return startPage*1024; // Starting virtual address
+
+        } finally {
+            memoryLock.unlock();
         }
-        return startPage*1024; // Starting virtual address
     }
 
     /**
-     * Frees allocated memory, removes mapping from process array
+     * Frees allocated memory (all or part of one allocation), removes its mappings from the page table
      * @param pointer Starting virtual address to free
      * @param size Amount of memory to free
      * @return True if memory was freed successfully
      */
     public boolean FreeMemory(int pointer, int size) {
-        int virtualPageIndex = pointer/1024; // Gives page number in array
-        int pagesToFree = size/1024; // Number of pages to free
-        KernelandProcess kp = pScheduler.GetCurrentProcess();
+        memoryLock.lock();
+        try {
+            int virtualPageIndex = pointer/1024; // Gives page number in array
+            int pagesToFree = (int) ((size + 1023L) / 1024); // Number of pages to free, rounded up like AllocateMemory
+            KernelandProcess kp = pScheduler.GetCurrentProcess();
+            Map.Entry<Integer, SharedSegment> shared = kp.sharedMappings.floorEntry(virtualPageIndex + pagesToFree - 1);
+            if (shared != null && shared.getKey() + shared.getValue().frames.length > virtualPageIndex) {
+                // a shared segment is only unmapped as a whole
+                if (shared.getKey() != virtualPageIndex || shared.getValue().frames.length != pagesToFree) return false;
+                kp.addressSpace.Free(virtualPageIndex, pagesToFree);
+                UnmapShared(kp, virtualPageIndex);
+                return true;
+            }
+            if (!kp.addressSpace.Free(virtualPageIndex, pagesToFree)) return false; // not inside one allocation
+            Map.Entry<Integer, Integer> huge = kp.hugeRegions.floorEntry(virtualPageIndex);
+            if (huge != null && virtualPageIndex < huge.getKey() + huge.getValue()) {
+                int hugeStart = huge.getKey(), hugeEnd = huge.getKey() + huge.getValue();
+                kp.hugeRegions.remove(hugeStart);
+                if (virtualPageIndex > hugeStart) kp.hugeRegions.put(hugeStart, virtualPageIndex - hugeStart);
+                if (virtualPageIndex + pagesToFree < hugeEnd) kp.hugeRegions.put(virtualPageIndex + pagesToFree, hugeEnd - virtualPageIndex - pagesToFree);
+            }
 
-        // Set all memory in range [virtualPageIndex, virtualPageIndex+pagesToFree] to false
-        for (int i=virtualPageIndex; i < virtualPageIndex+pagesToFree; i++) {
-            System.out.println("Attempting to free virtual page index " + virtualPageIndex + " with # pages to free " + pagesToFree);
-            if (kp.virtualPageToPhysicalPage[i].physicalPageNumber != -1) {
-                inUseMemoryBlock[i] = false;
-                kp.SetProcessPhysicalPageNumber(i, -1); // Remove from process array, set back to -1
+            // only pages that were touched have entries; Next skips the rest a table at a time
+            for (int i=kp.pageTable.Next(virtualPageIndex); i != -1 && i < virtualPageIndex+pagesToFree; i=kp.pageTable.Next(i+1)) {
+                VirtualToPhysicalMapping mapping = kp.pageTable.Get(i);
+                int hugeFirst = i & -(1 << mapping.hugeOrder);
+                if (mapping.hugeOrder > 0 && (hugeFirst < virtualPageIndex || hugeFirst + (1 << mapping.hugeOrder) > virtualPageIndex + pagesToFree)) {
+                    SplitHugePage(kp, i); // the part outside the range stays mapped
+                }
+                if (mapping.physicalPageNumber != -1) pScheduler.ShootdownTLB(kp, i);
+                Unmap(kp, i, mapping);
             }
-            System.out.println("Clearing virtual to physical page mapping");
-            kp.virtualPageToPhysicalPage[i] = null; // Set array entry for each block back to null
+            return true; // Memory successfully freed
+        } finally {
+            memoryLock.unlock();
         }
-        return true; // Memory successfully freed
     }
 
     /**
-     * Searches through the inUseMemoryBlock to find /pages/ of free space
-     * @param pages Amount of pages needed in memory
-     * @return Index in memory block to start; -1 on failure (all memory is used/not enough window space)
+     * Maps a named shared segment into the current process. The first process to map a name creates the segment,
+     * with zero-filled frames allocated up front; later ones map the same frames, and writes through any mapping
+     * are seen by all. The segment lives until its last mapping is freed or its last mapper terminates
+     * @param name Name of the segment
+     * @param size Size in bytes, rounded up to whole pages; must match the existing segment's
+     * @return Start virtual address of the mapping; -1 if the size does not match, or there is no room
      */
-    private int FindAvailableMemory(KernelandProcess kp, int pages) {
-        int idx = -1;
-        int window = 0;
-        for (int i=0; i<kp.virtualPageToPhysicalPage.length; i++) {
-            if (!inUseMemoryBlock[i]) { // Memory is available here
-                if (idx == -1) idx = i;
-                window++;
-            } else {
-                idx = -1;
-                window = 0;
+    public int MapShared(String name, int size) {
+        memoryLock.lock();
+        try {
+            int pages = (int) ((size + 1023L) / 1024);
+            KernelandProcess kp = pScheduler.GetCurrentProcess();
+            SharedSegment segment = sharedSegments.get(name);
+            if (segment != null && segment.frames.length != pages) return -1;
+            int startPage = kp.addressSpace.Allocate(pages);
+            if (startPage == -1) return -1;
+            if (segment == null) {
+                int[] frames = new int[pages];
+                for (int i=0; i<pages; i++) {
+                    frames[i] = AllocateFrame(); // the segment's reference
+                    if (frames[i] == -1) {
+                        for (int j=0; j<i; j++) ReleaseFrame(frames[j]);
+                        kp.addressSpace.Free(startPage, pages);
+                        return -1;
+                    }
+                    UserlandProcess.memory.Fill(frames[i] * 1024L, 1024, (byte) 0);
+                }
+                segment = new SharedSegment(name, frames);
+                sharedSegments.put(name, segment);
             }
-            if (window >= pages) return idx; // Window size is large enough
+            segment.mappings++;
+            kp.sharedMappings.put(startPage, segment);
+            for (int i=0; i<pages; i++) {
+                VirtualToPhysicalMapping mapping = new VirtualToPhysicalMapping();
+                mapping.physicalPageNumber = segment.frames[i];
+                mapping.shared = true;
+                mapping.dirty = true; // never written back, so writes need not fault to mark it
+                frameReferences[segment.frames[i]]++;
+                kp.pageTable.Set(startPage + i, mapping);
+            }
+            return startPage*1024;
+
+        } finally {
+            memoryLock.unlock();
         }
-        return -1; // Failure
     }
+
+    /**
+     * Removes a shared segment from a process' page table, and destroys the segment if that was its last mapping
+     * @param kp Process mapping the segment
+     * @param startPage First virtual page of the mapping
+     */
+    private void UnmapShared(KernelandProcess kp, int startPage) {
+        SharedSegment segment = kp.sharedMappings.remove(startPage);
+        for (int i=0; i<segment.frames.length; i++) {
+            pScheduler.ShootdownTLB(kp, startPage + i);
+            Unmap(kp, startPage + i, kp.pageTable.Get(startPage + i));
+        }
+        if (--segment.mappings == 0) {
+            for (int frame : segment.frames) ReleaseFrame(frame);
+            sharedSegments.remove(segment.name);
+        }
+    }
+
+    public FrameAllocator GetFrameAllocator() {
+        return frameAllocator;
+    }
+    public SwapManager GetSwapManager() { return swap; }
+    public long GetPageFaults() { return pageFaults; }
+    public long GetMajorFaults() { return majorFaults; }
+    public long GetEvictions() { return evictions; }
+    public long GetCleanEvictions() { return cleanEvictions; }
+    public SamePageMerger GetSamePageMerger() { return merger; }
+    public long GetHugePageFaults() { return hugePageFaults; }
+    public long GetHugePageFallbacks() { return hugePageFallbacks; }
+    public long GetHugePageSplits() { return hugePageSplits; }
+    public long GetPrefetched() { return prefetched; }
+    public long GetPrefetchHits() { return prefetchHits; }
+    public long GetPrefetchWasted() { return prefetchWasted; }
     public VirtualFileSystem GetVFS() {
         return VFS;
     }
+    public Scheduler GetScheduler() {
+        return pScheduler;
+    }
 }
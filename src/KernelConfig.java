@@ -0,0 +1,301 @@
+import java.util.Random;
+
+/**
+ * Startup options for the simulated machine, passed to OS.Startup
+ */
+public class KernelConfig {
+    private boolean virtualThreads = false;
+    private int cpus = 1;
+    private SchedulingPolicy.Type schedulingPolicy = SchedulingPolicy.Type.MLFQ;
+    private long seed = new Random().nextLong(); // printed at startup so any run can be replayed
+    private double[] mlfqShares = {0.6, 0.9, 0.75};
+    private int demotionTimeouts = 5;
+    private int quantumMillis = 250; // as per assignment requirements (#1)
+    private boolean virtualClock = false;
+    private long virtualSyscallNanos = 10_000;
+    private int mailboxCapacity = Mailbox.DEFAULT_CAPACITY;
+    private int tlbEntries = 64, tlbWays = 4, hugeTlbEntries = 8;
+    private int hugePageSize = 64; // 64KB
+    private int physicalFrames = 1024; // 1MB of simulated memory
+    private TLB.Replacement tlbReplacement = TLB.Replacement.LRU;
+    private PageReplacementPolicy.Type pageReplacement = PageReplacementPolicy.Type.CLOCK;
+    private long workingSetWindow = 4096;
+    private int swapForceBatch = 0;
+    private PhysicalMemory.Type physicalMemory = PhysicalMemory.Type.HEAP;
+    private int mergePagesPerScan = 0, mergeIntervalMillis = 20;
+    private int readAhead = 32;
+    private int workingSetSampleMillis = 0, workingSetSamples = 4;
+    private boolean loadControl = false;
+
+    /**
+     * Backs every process with a virtual thread instead of a platform thread, so blocking kernel calls
+     * unmount the carrier and hundreds of thousands of processes fit in one JVM (needs a JDK with Thread.ofVirtual)
+     * @param virtualThreads True to use virtual threads
+     * @return This config
+     */
+    public KernelConfig SetVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+    public boolean IsVirtualThreads() { return virtualThreads; }
+
+    /**
+     * Sets the number of simulated CPUs; each has its own current process, run queues and TLB
+     * @param cpus Number of CPUs (at least 1)
+     * @return This config
+     */
+    public KernelConfig SetCpus(int cpus) {
+        if (cpus < 1) throw new IllegalArgumentException("Need at least one CPU");
+        this.cpus = cpus;
+        return this;
+    }
+    public int GetCpus() { return cpus; }
+
+    /**
+     * Selects the scheduling policy every CPU runs
+     * @param schedulingPolicy Which policy
+     * @return This config
+     */
+    public KernelConfig SetSchedulingPolicy(SchedulingPolicy.Type schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+        return this;
+    }
+    public SchedulingPolicy.Type GetSchedulingPolicy() { return schedulingPolicy; }
+
+    /**
+     * Seeds every random scheduling decision; the same seed replays the same decisions
+     * @param seed Seed value
+     * @return This config
+     */
+    public KernelConfig SetSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+    public long GetSeed() { return seed; }
+
+    /**
+     * Tunes the MLFQ priority draw
+     * @param realTime Odds of running REALTIME when it is queued
+     * @param realTimeOrInteractive Cumulative odds of REALTIME or INTERACTIVE when REALTIME is queued
+     * @param interactive Odds of running INTERACTIVE over BACKGROUND when no REALTIME is queued
+     * @return This config
+     */
+    public KernelConfig SetMlfqShares(double realTime, double realTimeOrInteractive, double interactive) {
+        this.mlfqShares = new double[]{realTime, realTimeOrInteractive, interactive};
+        return this;
+    }
+    public double[] GetMlfqShares() { return mlfqShares.clone(); }
+
+    /**
+     * Sets how many consecutive quantum expiries demote an MLFQ process by one level
+     * @param demotionTimeouts Number of timeouts
+     * @return This config
+     */
+    public KernelConfig SetDemotionTimeouts(int demotionTimeouts) {
+        this.demotionTimeouts = demotionTimeouts;
+        return this;
+    }
+    public int GetDemotionTimeouts() { return demotionTimeouts; }
+
+    /**
+     * Sets the scheduling quantum
+     * @param quantumMillis Quantum in milliseconds
+     * @return This config
+     */
+    public KernelConfig SetQuantumMillis(int quantumMillis) {
+        this.quantumMillis = quantumMillis;
+        return this;
+    }
+    public int GetQuantumMillis() { return quantumMillis; }
+
+    /**
+     * Switches between real-time mode (timer interrupts, wall-clock sleeps) and discrete-event mode, where a virtual
+     * clock advances by a fixed cost per kernel call and jumps straight to the next wakeup when every CPU is idle
+     * @param virtualClock True for discrete-event mode
+     * @return This config
+     */
+    public KernelConfig SetVirtualClock(boolean virtualClock) {
+        this.virtualClock = virtualClock;
+        return this;
+    }
+    public boolean IsVirtualClock() { return virtualClock; }
+
+    /**
+     * Sets how much virtual time one kernel call costs in discrete-event mode
+     * @param virtualSyscallNanos Cost in nanoseconds
+     * @return This config
+     */
+    public KernelConfig SetVirtualSyscallNanos(long virtualSyscallNanos) {
+        this.virtualSyscallNanos = virtualSyscallNanos;
+        return this;
+    }
+    public long GetVirtualSyscallNanos() { return virtualSyscallNanos; }
+
+    /**
+     * Sets how many messages a process can have queued before SendMessage to it fails
+     * @param mailboxCapacity Messages per mailbox, rounded up to a power of two
+     * @return This config
+     */
+    public KernelConfig SetMailboxCapacity(int mailboxCapacity) {
+        if (mailboxCapacity < 1) throw new IllegalArgumentException("Mailbox capacity must be at least 1");
+        this.mailboxCapacity = mailboxCapacity;
+        return this;
+    }
+    public int GetMailboxCapacity() { return mailboxCapacity; }
+
+    /**
+     * Sets the shape of every CPU's TLB
+     * @param entries Total entries per CPU, rounded up to a power of two
+     * @param ways Entries per set (1 for direct-mapped, entries for fully associative)
+     * @param replacement Eviction order within a full set
+     * @return This config
+     */
+    public KernelConfig SetTlb(int entries, int ways, TLB.Replacement replacement) {
+        if (entries < 1 || ways < 1) throw new IllegalArgumentException("TLB needs at least one entry and one way");
+        this.tlbEntries = entries;
+        this.tlbWays = ways;
+        this.tlbReplacement = replacement;
+        return this;
+    }
+    public int GetTlbEntries() { return tlbEntries; }
+    public int GetTlbWays() { return tlbWays; }
+    public TLB.Replacement GetTlbReplacement() { return tlbReplacement; }
+
+    /**
+     * Sets how many huge page translations every CPU's TLB holds, next to its ordinary entries
+     * @param hugeTlbEntries Number of entries, 0 to never cache huge pages as a whole
+     * @return This config
+     */
+    public KernelConfig SetHugeTlbEntries(int hugeTlbEntries) {
+        if (hugeTlbEntries < 0) throw new IllegalArgumentException("Huge TLB entries cannot be negative");
+        this.hugeTlbEntries = hugeTlbEntries;
+        return this;
+    }
+    public int GetHugeTlbEntries() { return hugeTlbEntries; }
+
+    /**
+     * Sets the size of the huge pages backing OS.AllocateMemory(size, true)
+     * @param hugePageSize Size in 1KB pages, a power of two of at least 2 (64 for 64KB, 1024 for 1MB)
+     * @return This config
+     */
+    public KernelConfig SetHugePageSize(int hugePageSize) {
+        if (hugePageSize < 2 || Integer.bitCount(hugePageSize) != 1) throw new IllegalArgumentException("Huge page size must be a power of two of at least 2 pages");
+        this.hugePageSize = hugePageSize;
+        return this;
+    }
+    public int GetHugePageSize() { return hugePageSize; }
+
+    /**
+     * Sets the size of simulated physical memory in 1KB frames
+     * @param physicalFrames Number of frames; HEAP memory holds at most 2GB, DIRECT memory is only limited by the JVM
+     * @return This config
+     */
+    public KernelConfig SetPhysicalFrames(int physicalFrames) {
+        if (physicalFrames < 1) throw new IllegalArgumentException("Need at least one physical frame");
+        this.physicalFrames = physicalFrames;
+        return this;
+    }
+    public int GetPhysicalFrames() { return physicalFrames; }
+
+    /**
+     * Selects where simulated physical memory lives: a byte array on the heap, or direct buffers off the heap
+     * @param physicalMemory Which backend
+     * @return This config
+     */
+    public KernelConfig SetPhysicalMemory(PhysicalMemory.Type physicalMemory) {
+        this.physicalMemory = physicalMemory;
+        return this;
+    }
+    public PhysicalMemory.Type GetPhysicalMemory() { return physicalMemory; }
+
+    /**
+     * Runs the same-page merging daemon, which merges frames with identical contents into one copy-on-write frame
+     * @param pagesPerScan Frames hashed per wakeup, 0 to not run the daemon
+     * @param intervalMillis Pause between wakeups
+     * @return This config
+     */
+    public KernelConfig SetSamePageMerging(int pagesPerScan, int intervalMillis) {
+        if (pagesPerScan < 0 || intervalMillis < 1) throw new IllegalArgumentException("Merging needs a non-negative batch and a positive interval");
+        this.mergePagesPerScan = pagesPerScan;
+        this.mergeIntervalMillis = intervalMillis;
+        return this;
+    }
+    public int GetMergePagesPerScan() { return mergePagesPerScan; }
+    public int GetMergeIntervalMillis() { return mergeIntervalMillis; }
+
+    /**
+     * Sets how far the pager reads ahead of a process that faults on consecutive pages. The window starts small,
+     * doubles while the stream stays sequential, and halves whenever a page read ahead is evicted unused
+     * @param readAhead Largest window in pages, 0 to only ever bring in the faulting page
+     * @return This config
+     */
+    public KernelConfig SetReadAhead(int readAhead) {
+        if (readAhead < 0) throw new IllegalArgumentException("Read-ahead window cannot be negative");
+        this.readAhead = readAhead;
+        return this;
+    }
+    public int GetReadAhead() { return readAhead; }
+
+    /**
+     * Samples every process' referenced bits at a fixed interval to estimate its working set and fault rate.
+     * A page is in the working set if it was referenced during any of the last samples
+     * @param intervalMillis Pause between samples, 0 to not sample
+     * @param samples Samples in the window, 1 to 8
+     * @return This config
+     */
+    public KernelConfig SetWorkingSetSampling(int intervalMillis, int samples) {
+        if (intervalMillis < 0 || samples < 1 || samples > 8) throw new IllegalArgumentException("Sampling needs a non-negative interval and 1 to 8 samples");
+        this.workingSetSampleMillis = intervalMillis;
+        this.workingSetSamples = samples;
+        return this;
+    }
+    public int GetWorkingSetSampleMillis() { return workingSetSampleMillis; }
+    public int GetWorkingSetSamples() { return workingSetSamples; }
+
+    /**
+     * Suspends processes while the working sets of the others already fill physical memory, and resumes them
+     * once theirs fits again, so the ones that run stop stealing each other's frames. Needs working-set sampling
+     * @param loadControl True to suspend processes under memory pressure
+     * @return This config
+     */
+    public KernelConfig SetLoadControl(boolean loadControl) {
+        this.loadControl = loadControl;
+        return this;
+    }
+    public boolean IsLoadControl() { return loadControl; }
+
+    /**
+     * Selects how the pager picks a page to evict when physical memory is full
+     * @param pageReplacement Which policy
+     * @return This config
+     */
+    public KernelConfig SetPageReplacement(PageReplacementPolicy.Type pageReplacement) {
+        this.pageReplacement = pageReplacement;
+        return this;
+    }
+    public PageReplacementPolicy.Type GetPageReplacement() { return pageReplacement; }
+
+    /**
+     * Sets how far back a reference still counts as part of the working set (WSClock)
+     * @param workingSetWindow Window in pager references (TLB misses)
+     * @return This config
+     */
+    public KernelConfig SetWorkingSetWindow(long workingSetWindow) {
+        if (workingSetWindow < 1) throw new IllegalArgumentException("Working-set window must be positive");
+        this.workingSetWindow = workingSetWindow;
+        return this;
+    }
+    public long GetWorkingSetWindow() { return workingSetWindow; }
+
+    /**
+     * Forces the memory-mapped swap file to disk in the background after every batch of page-outs
+     * @param swapForceBatch Page-outs per force, 0 to never force
+     * @return This config
+     */
+    public KernelConfig SetSwapForceBatch(int swapForceBatch) {
+        if (swapForceBatch < 0) throw new IllegalArgumentException("Force batch cannot be negative");
+        this.swapForceBatch = swapForceBatch;
+        return this;
+    }
+    public int GetSwapForceBatch() { return swapForceBatch; }
+}
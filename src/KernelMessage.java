@@ -1,17 +1,52 @@
 public class KernelMessage {
+    /**
+     * How pages attached to a message reach the receiver
+     */
+    enum PageMode {
+        NONE, // no pages, only data
+        TRANSFER, // pages leave the sender's address space and appear in the receiver's
+        SHARE // both keep the pages, copy-on-write
+    }
     int senderPid, targetPid, whatMessage;
     byte[] data;
+    long sentNanos; // scheduler clock time the kernel queued the message, for delivery latency
+    int pageAddress, pageCount; // sender's virtual address of the pages; the receiver's once delivered
+    PageMode pageMode;
+    int[] frames; // physical pages in flight, filled in by the kernel
+    int correlationId; // pairs an OS.Call request with its reply, 0 for plain messages
     public KernelMessage(int p_senderPid, int p_targetPid, int p_whatMessage, byte[] p_data) {
         this.senderPid = p_senderPid;
         this.targetPid = p_targetPid;
         this.whatMessage = p_whatMessage++;
         this.data = p_data;
+        this.pageAddress = -1;
+        this.pageMode = PageMode.NONE;
+    }
+
+    /**
+     * Constructs a message whose payload is whole pages of the sender's memory, remapped rather than copied
+     * @param p_senderPid PID of the sender
+     * @param p_targetPid PID of the receiver
+     * @param p_whatMessage Message type
+     * @param p_pageAddress Virtual address of the first page (multiple of 1024)
+     * @param p_pageCount Number of pages
+     * @param p_pageMode TRANSFER to give the pages away, SHARE to keep them copy-on-write
+     */
+    public KernelMessage(int p_senderPid, int p_targetPid, int p_whatMessage, int p_pageAddress, int p_pageCount, PageMode p_pageMode) {
+        this(p_senderPid, p_targetPid, p_whatMessage, null);
+        this.pageAddress = p_pageAddress;
+        this.pageCount = p_pageCount;
+        this.pageMode = p_pageMode;
     }
     public KernelMessage(KernelMessage km) {
         this.senderPid = km.senderPid;
         this.targetPid = km.targetPid;
         this.whatMessage = km.whatMessage++;
         this.data = km.data;
+        this.pageAddress = km.pageAddress;
+        this.pageCount = km.pageCount;
+        this.pageMode = km.pageMode;
+        this.correlationId = km.correlationId;
     }
     public String toString() {
         return "Sender PID: " + this.senderPid + ". Target PID: " + this.targetPid + ". What: " + this.whatMessage + ".";
@@ -1,17 +1,46 @@
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("ALL")
 public class KernelandProcess {
-    private static int nextPid = 0;
+    private static final AtomicInteger nextPid = new AtomicInteger(); // processes are created concurrently on every CPU
+    private static final ThreadLocal<KernelandProcess> self = new ThreadLocal<>(); // process owning the calling thread
     private int processId, timeout;
     boolean isThreadStarted; // indicates whether thread has been started or not
+    private volatile boolean isDone; // set once the userland code has returned
+    private volatile boolean stopRequested; // set by the timer, honoured at the next kernel call
+    private final Semaphore permit; // one permit per dispatch, taken by the process thread before it runs
+    private volatile long runRequestedNanos; // when the scheduler last handed this process the CPU
+    private long enqueuedNanos; // scheduler clock time when the process last joined a run queue
+    private long dispatchedNanos; // scheduler clock time when the process was last dispatched
+    private long virtualRuntime; // CFS virtual runtime, or pass value for stride scheduling
     Thread pThread;
+    private volatile CPU cpu; // CPU the process runs (or last ran) on
     private Priority priority;
     private final int[] kernelEntries;
     String name;
-    LinkedList<KernelMessage> kernelMessage;
-    public VirtualToPhysicalMapping[] virtualPageToPhysicalPage; // Index is virtual page number, value is physical page number
+    final Mailbox mailbox; // messages sent to this process, filled lock-free by any CPU
+    final Mailbox replies; // reply to the outstanding OS.Call, kept apart from ordinary messages
+    final AtomicInteger pendingCall; // correlation id of the outstanding OS.Call, 0 if none
+    final PageTable pageTable; // virtual page number to VirtualToPhysicalMapping, tables allocated on first use
+    AddressSpace addressSpace; // virtual ranges handed out by AllocateMemory, replaced by a copy in a forked child
+    final TreeMap<Integer, SharedSegment> sharedMappings; // first virtual page of each shared segment mapped by OS.MapShared
+    final TreeMap<Integer, Integer> hugeRegions; // allocations backed by huge pages where possible, first page to length
+    boolean memoryReleased; // set by Kernel.ReleaseMemory, under the kernel's memory lock; pages sent later are dropped
+    int lastFaultPage = -2; // virtual page of the last page fault, under the kernel's memory lock
+    int readAheadEnd = -1; // first page past the last read-ahead; a fault there continues the stream
+    int readAheadMarker = -1; // page whose first use triggers the next read-ahead, -1 if none is pending
+    int readAheadWindow; // pages read ahead last time, 0 while the stream is not sequential
+    int workingSet; // pages referenced within the working-set window at the last sample, under the kernel's memory lock
+    int faultRate; // page faults per second between the last two samples
+    long pageFaults; // page faults taken by this process
+    long sampledFaults; // page faults at the last sample
+    volatile boolean suspended; // held back by load control, changed under the scheduler's load lock
+    boolean parked; // suspended and off every run queue, so resuming it must queue it again
+    long loadControlSample; // sample at which load control last suspended or resumed it
     private UserlandProcess userlandProcess;
     /**
      * Constructs a KernelandProcess by instantiating a new thread,
@@ -19,30 +48,59 @@ public class KernelandProcess {
      * @param up A certain UserlandProcess
      */
     KernelandProcess(UserlandProcess up) {
-        this.pThread = new Thread(up);
-        this.processId = nextPid++;
-        this.isThreadStarted = false;
-        this.timeout = 0;
-        this.kernelEntries = new int[10];
-        this.name = up.getClass().getSimpleName();
-        this.kernelMessage = new LinkedList<>();
-        this.virtualPageToPhysicalPage = new VirtualToPhysicalMapping[100]; // 100 elements represents 100 pages
-        this.userlandProcess = up;
-        Arrays.fill(kernelEntries, -1); // Fill array with empty entries
-        //Arrays.fill(virtualPageToPhysicalPage, -1);
+        this(up, null);
     }
     KernelandProcess(UserlandProcess up, Priority priority) {
-        this.pThread = new Thread(up);
+        this(up, priority, Thread::new, Mailbox.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a KernelandProcess whose thread comes from the given factory (platform or virtual threads)
+     * @param up A certain UserlandProcess
+     * @param priority Priority to start the process at
+     * @param threadFactory Creates the thread backing this process
+     * @param mailboxCapacity Number of messages that can be queued for this process
+     */
+    KernelandProcess(UserlandProcess up, Priority priority, ThreadFactory threadFactory, int mailboxCapacity) {
+        this.pThread = threadFactory.newThread(() -> RunUserland(up));
+        this.permit = new Semaphore(0);
         this.priority = priority;
-        this.processId = nextPid++;
+        this.processId = nextPid.getAndIncrement();
         this.isThreadStarted = false;
         this.timeout = 0;
         this.kernelEntries = new int[10];
         this.name = up.getClass().getSimpleName();
-        this.kernelMessage = new LinkedList<>();
-        this.virtualPageToPhysicalPage = new VirtualToPhysicalMapping[100]; // 100 elements represents 100 pages
+        this.mailbox = new Mailbox(mailboxCapacity);
+        this.replies = new Mailbox(2);
+        this.pendingCall = new AtomicInteger();
+        this.pageTable = new PageTable();
+        this.addressSpace = new AddressSpace(PageTable.PAGES);
+        this.sharedMappings = new TreeMap<>();
+        this.hugeRegions = new TreeMap<>();
+        this.userlandProcess = up;
+        up.mmu.asid = processId;
         Arrays.fill(kernelEntries, -1); // Fill array with empty entries
-        //Arrays.fill(virtualPageToPhysicalPage, -1);
+    }
+
+    /**
+     * Retrieves the KernelandProcess whose thread is calling
+     * @return KernelandProcess of the calling thread, null for threads that are not processes
+     */
+    static KernelandProcess Self() { return self.get(); }
+
+    /**
+     * Retrieves the CPU this process is running on (or last ran on)
+     * @return CPU of the process, null if it never ran
+     */
+    CPU GetCpu() { return this.cpu; }
+
+    /**
+     * Binds the process to a CPU; its userland code then translates through that CPU's TLB
+     * @param cpu CPU the process is dispatched on
+     */
+    void SetCpu(CPU cpu) {
+        this.cpu = cpu;
+        userlandProcess.mmu.tlb = cpu.GetTLB();
     }
 
     /**
@@ -96,89 +154,144 @@ public class KernelandProcess {
     void SetTimeout(int timeout) { this.timeout = timeout; }
 
     /**
-     * Resumes thread if already started, else, sets flag to true and starts thread
+     * Body of the process thread: waits to be dispatched, runs the userland code, then gives the CPU back
+     * @param up The UserlandProcess to run
+     */
+    private void RunUserland(UserlandProcess up) {
+        self.set(this);
+        WaitForTurn();
+        try {
+            up.run();
+        } finally {
+            isDone = true;
+            Kernel.ExitProcess();
+        }
+    }
+
+    /**
+     * Retrieves when this process was last dispatched, on the scheduler clock
+     * @return Clock time of the last dispatch
+     */
+    long GetDispatchedNanos() { return this.dispatchedNanos; }
+    void SetDispatchedNanos(long dispatchedNanos) { this.dispatchedNanos = dispatchedNanos; }
+
+    long GetEnqueuedNanos() { return this.enqueuedNanos; }
+    void SetEnqueuedNanos(long enqueuedNanos) { this.enqueuedNanos = enqueuedNanos; }
+
+    /**
+     * Retrieves the policy-specific ordering key: virtual runtime (CFS) or pass (stride)
+     * @return Virtual runtime of the process
+     */
+    long GetVirtualRuntime() { return this.virtualRuntime; }
+    void SetVirtualRuntime(long virtualRuntime) { this.virtualRuntime = virtualRuntime; }
+
+    /**
+     * Hands the CPU to this process by releasing its permit, starting the thread on first dispatch
      */
     void Run() {
-        if (isThreadStarted) {
-            // already started, so resume
-            pThread.resume();
-        } else {
+        runRequestedNanos = System.nanoTime();
+        if (!isThreadStarted) {
             // not yet started
             isThreadStarted = true;
             pThread.start();
         }
+        permit.release();
     }
 
     /**
-     * Suspends thread if already started
+     * Takes the CPU away from the process. Nothing is suspended here: the process thread
+     * parks itself in WaitForTurn() once it is back in the kernel
      */
     void Stop() {
-        if (isThreadStarted) pThread.suspend();
+        stopRequested = false;
     }
 
     /**
-     * Flags whether thread is already started and is not alive (completed)
-     * @return True if thread is already started and is not alive
+     * Asks the process to give up the CPU at its next kernel call (quantum expired)
      */
-    boolean IsDone() {
-        return isThreadStarted && !pThread.isAlive();
+    void RequestStop() {
+        stopRequested = true;
     }
 
     /**
-     * Randomly chooses an index in TLB to set a random virtual page number
-     * @param virtualPageNumber Virtual page number to map
+     * Flags whether the timer asked this process to give up the CPU
+     * @return True if the process should yield at its next kernel call
      */
-    void SetRandomTLB(int virtualPageNumber) {
-        int randomPhysicalPageNumber = (int) (Math.random() * 10); // Random page to update
-        // Randomly update a TLB entry
-        System.out.println("Updating random TLB entry in KernelandProcess to physical page number " + randomPhysicalPageNumber);
-        int randomTLBIndex = (int) (Math.random() * 2);
-        userlandProcess.TLB[randomTLBIndex][0] = virtualPageNumber;
-        userlandProcess.TLB[randomTLBIndex][1] = randomPhysicalPageNumber;
-    }
-    void PreserveTLB(int virtualPageNumber, int physicalPageNumber) {
-        if (userlandProcess.TLB[0][0] == virtualPageNumber) { userlandProcess.TLB[0][1] = physicalPageNumber; }
-        else userlandProcess.TLB[1][1] = physicalPageNumber;
+    boolean IsStopRequested() {
+        return stopRequested;
     }
 
     /**
-     * Map a virtual page number (index) to a physical page number (value) in Page Table
-     * @param virtualPageNumber Some virtual page number to map
-     * @param physicalPageNumber Some physical page number to map
+     * Parks the calling process thread until the scheduler dispatches it again
+     * @return Nanoseconds between the scheduler's Run() and the thread actually resuming
      */
-    void SetProcessPhysicalPageNumber(int virtualPageNumber, int physicalPageNumber) {
-        System.out.println("Virtual page number: " + virtualPageNumber + ". Physical page number: " + physicalPageNumber);
-        virtualPageToPhysicalPage[virtualPageNumber].physicalPageNumber = physicalPageNumber;
+    long WaitForTurn() {
+        permit.acquireUninterruptibly();
+        return System.nanoTime() - runRequestedNanos;
     }
 
     /**
-     * Retrieves some physical page number based on virtual page number mapping
-     * @param virtualPageNumber Some virtual page number to find mapping
-     * @return Physical page number if found in TLB; -1 on failure
+     * Flags whether thread is already started and is not alive (completed)
+     * @return True if thread is already started and is not alive
      */
-    int GetPhysicalPageNumber(int virtualPageNumber) {
-        for (int i=0; i<userlandProcess.TLB.length; i++) {
-            if (userlandProcess.TLB[i][0] == virtualPageNumber) {
-                System.out.println("Found physical page number");
-                return userlandProcess.TLB[i][1];
-            }
-        }
-        return -1;
+    boolean IsDone() {
+        return isThreadStarted && (isDone || !pThread.isAlive());
     }
 
     /**
-     * Clears the TLB on a task switch
+     * Loads a page table entry into the TLB of the CPU this process runs on
+     * @param virtualPageNumber Virtual page number to load
+     * @param physicalPageNumber Physical page number it maps to
+     * @param writable False for copy-on-write pages, so a write traps into the kernel
      */
-    void ClearTLB() {
-        Arrays.fill(userlandProcess.TLB[0], -1);
-        Arrays.fill(userlandProcess.TLB[1], -1);
+    void LoadTLB(int virtualPageNumber, int physicalPageNumber, boolean writable) {
+        cpu.GetTLB().Insert(processId, virtualPageNumber, physicalPageNumber, writable);
     }
 
     /**
-     * Clears the memory on process termination
+     * Loads a huge page into the TLB of the CPU this process runs on, as one entry
+     * @param firstVirtualPage First virtual page of the huge page
+     * @param firstPhysicalPage First of its contiguous frames
+     * @param order Log2 of the number of pages
+     * @param writable False if a write must trap into the kernel
      */
-    void ClearMemory() {
-        System.out.println("Clearing memory");
-        Arrays.fill(userlandProcess.memory, (byte) -1);
+    void LoadHugeTLB(int firstVirtualPage, int firstPhysicalPage, int order, boolean writable) {
+        cpu.GetTLB().InsertHuge(processId, firstVirtualPage, firstPhysicalPage, order, writable);
     }
+
+    /**
+     * Retrieves the working set measured at the last sample: pages referenced within the sampling window
+     * @return Working-set size in pages
+     */
+    int GetWorkingSet() { return this.workingSet; }
+
+    /**
+     * Retrieves the rate at which this process page-faulted between the last two samples
+     * @return Page faults per second
+     */
+    int GetFaultRate() { return this.faultRate; }
+
+    /**
+     * Retrieves how many page faults this process took
+     * @return Number of page faults
+     */
+    long GetPageFaults() { return this.pageFaults; }
+
+    /**
+     * Flags whether load control has suspended this process to relieve memory pressure
+     * @return True if suspended
+     */
+    boolean IsSuspended() { return this.suspended; }
+
+    /**
+     * Retrieves how many translations of this process hit in the TLB
+     * @return Number of TLB hits
+     */
+    long GetTlbHits() { return userlandProcess.mmu.GetHits(); }
+
+    /**
+     * Retrieves how many translations of this process missed the TLB and went to the kernel
+     * @return Number of TLB misses
+     */
+    long GetTlbMisses() { return userlandProcess.mmu.GetMisses(); }
 }
@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running count/average/max of a latency measured in nanoseconds, plus a log-linear histogram for percentiles.
+ * Recording takes no lock: every CPU sends messages and switches processes at once, and a monitor here would
+ * serialize them all (and pin virtual threads). Readers see a sum of counters that may be mid-update
+ */
+public class LatencyStats {
+    private static final int SUB_BUCKETS = 16; // per power of two, so percentiles are within ~6%
+    private final String name;
+    private final LongAdder count, totalNanos;
+    private final LongAccumulator maxNanos;
+    private final LongAdder[] histogram;
+
+    public LatencyStats(String name) {
+        this.name = name;
+        this.count = new LongAdder();
+        this.totalNanos = new LongAdder();
+        this.maxNanos = new LongAccumulator(Math::max, 0);
+        this.histogram = new LongAdder[64 * SUB_BUCKETS];
+        for (int i=0; i<histogram.length; i++) histogram[i] = new LongAdder();
+    }
+
+    /**
+     * Records one sample
+     * @param nanos Measured latency in nanoseconds
+     */
+    public void Record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram[Bucket(nanos)].increment();
+    }
+
+    public long GetCount() { return count.sum(); }
+    public long GetMaxNanos() { return maxNanos.get(); }
+
+    /**
+     * Retrieves the average of all recorded samples
+     * @return Average latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long GetAverageNanos() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : totalNanos.sum() / count;
+    }
+
+    /**
+     * Retrieves a percentile of the recorded samples
+     * @param percentile Percentile between 0 and 100 (e.g. 99 for the tail)
+     * @return Upper bound of the bucket holding that percentile in nanoseconds, 0 if nothing was recorded
+     */
+    public long GetPercentileNanos(double percentile) {
+        long[] buckets = new long[histogram.length];
+        long count = 0;
+        for (int i=0; i<histogram.length; i++) count += buckets[i] = histogram[i].sum();
+        if (count == 0) return 0;
+        long maxNanos = GetMaxNanos();
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i=0; i<buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) return Math.min(BucketUpperBound(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    public void Reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : histogram) bucket.reset();
+    }
+
+    /**
+     * Maps a value to its bucket: the power of two picks the row, the next 4 bits pick the sub-bucket
+     */
+    private static int Bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos); // >= 4
+        int sub = (int) (nanos >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+        return (exponent - 3) * SUB_BUCKETS + sub;
+    }
+    private static long BucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + 3;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - 4)) - 1;
+    }
+
+    public String toString() {
+        return name + ": " + GetCount() + " samples, avg " + GetAverageNanos() / 1000 + "us, p99 "
+                + GetPercentileNanos(99) / 1000 + "us, max " + GetMaxNanos() / 1000 + "us";
+    }
+}
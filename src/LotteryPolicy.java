@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Lottery scheduling: each queued process holds tickets by priority, and the winner of a seeded draw runs next
+ */
+public class LotteryPolicy implements SchedulingPolicy {
+    private final Random random;
+    private final List<KernelandProcess> queued;
+    private long totalTickets;
+
+    public LotteryPolicy(long seed) {
+        this.random = new Random(seed);
+        this.queued = new ArrayList<>();
+    }
+
+    @Override
+    public void Enqueue(KernelandProcess kp) {
+        queued.add(kp);
+        totalTickets += SchedulingPolicy.Weight(kp.GetPriority());
+    }
+
+    @Override
+    public KernelandProcess PickNext() {
+        if (queued.isEmpty()) return null;
+        long ticket = (long) (random.nextDouble() * totalTickets);
+        for (int i=0; i<queued.size(); i++) {
+            ticket -= SchedulingPolicy.Weight(queued.get(i).GetPriority());
+            if (ticket < 0) return Remove(i);
+        }
+        return Remove(queued.size() - 1);
+    }
+
+    @Override
+    public KernelandProcess Steal() {
+        return queued.isEmpty() ? null : Remove(queued.size() - 1);
+    }
+
+    @Override
+    public void Account(KernelandProcess kp, long ranNanos, boolean preempted) { }
+
+    @Override
+    public List<KernelandProcess> Queued() {
+        return new ArrayList<>(queued);
+    }
+
+    /**
+     * Removes a queued process, keeping the list in arrival order
+     */
+    private KernelandProcess Remove(int index) {
+        KernelandProcess kp = queued.remove(index);
+        totalTickets -= SchedulingPolicy.Weight(kp.GetPriority());
+        return kp;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Memory management unit of one process: translates virtual addresses through the TLB of the CPU the process runs on
+ * and faults into the kernel (OS.GetMapping) on a miss. The access path neither allocates nor prints;
+ * block transfers translate once per page and copy the rest in bulk
+ */
+public class MMU {
+    static final int PAGE_SIZE = 1024;
+    int asid; // address space id tagging the process' TLB entries (its pid)
+    TLB tlb; // TLB of the CPU the process is currently dispatched on
+    private long hits, misses; // only the process' own thread updates these
+
+    /**
+     * Reads one byte
+     * @param address Virtual address
+     * @return Byte at that address
+     */
+    public byte Read(int address) {
+        return UserlandProcess.memory.Get(Translate(address, false));
+    }
+
+    /**
+     * Writes one byte
+     * @param address Virtual address
+     * @param value Byte to write
+     */
+    public void Write(int address, byte value) {
+        UserlandProcess.memory.Put(Translate(address, true), value);
+    }
+
+    /**
+     * Fills a buffer from consecutive virtual addresses
+     * @param address Virtual address of the first byte
+     * @param buffer Destination, filled completely
+     */
+    public void ReadBlock(int address, byte[] buffer) {
+        int done = 0;
+        while (done < buffer.length) {
+            int length = Math.min(buffer.length - done, PAGE_SIZE - ((address + done) & (PAGE_SIZE - 1))); // rest of this page
+            UserlandProcess.memory.Read(Translate(address + done, false), buffer, done, length);
+            done += length;
+        }
+    }
+
+    /**
+     * Writes a buffer to consecutive virtual addresses
+     * @param address Virtual address of the first byte
+     * @param buffer Bytes to write
+     */
+    public void WriteBlock(int address, byte[] buffer) {
+        int done = 0;
+        while (done < buffer.length) {
+            int length = Math.min(buffer.length - done, PAGE_SIZE - ((address + done) & (PAGE_SIZE - 1)));
+            UserlandProcess.memory.Write(Translate(address + done, true), buffer, done, length);
+            done += length;
+        }
+    }
+
+    /**
+     * Translates a virtual address, faulting into the kernel until the TLB holds a usable entry
+     * @param address Virtual address
+     * @param write True for a write, which needs a writable entry
+     * @return Physical address
+     */
+    long Translate(int address, boolean write) {
+        int pageNumber = address >>> 10; // unsigned, so a negative address lands past the address space and segfaults
+        while (true) {
+            int physicalPageNumber = tlb.Lookup(asid, pageNumber, write);
+            if (physicalPageNumber != -1) {
+                hits++;
+                return (long) physicalPageNumber * PAGE_SIZE + (address & (PAGE_SIZE - 1));
+            }
+            misses++;
+            OS.GetMapping(pageNumber, write);
+        }
+    }
+
+    public long GetHits() { return hits; }
+    public long GetMisses() { return misses; }
+}
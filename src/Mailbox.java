@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-process message queue: bounded, lock-free, many senders and one receiver (the owning process).
+ * Each slot carries a sequence number telling senders whether it is free and the receiver whether it is filled,
+ * so neither side ever takes a lock. The waiting flag replaces the scheduler's map of waiting processes.
+ * The slots are only allocated when the first message arrives, so a process that is never sent anything costs no buffer
+ */
+public class Mailbox {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private final int mask;
+    private final AtomicReference<Slots> slots; // null until the first Offer
+    private final AtomicLong tail; // next slot a sender claims
+    private volatile long head; // next slot the receiver reads; only the receiver writes it
+    private final AtomicBoolean waiting; // owner is blocked in WaitForMessage
+    private final AtomicInteger maxDepth; // raised by many senders at once
+
+    /**
+     * @param capacity Maximum number of queued messages, rounded up to a power of two
+     */
+    public Mailbox(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReference<>();
+        this.tail = new AtomicLong();
+        this.waiting = new AtomicBoolean();
+        this.maxDepth = new AtomicInteger();
+    }
+
+    /**
+     * Adds a message; safe to call from any number of senders at once
+     * @param km Message to queue
+     * @return False if the mailbox is full
+     */
+    public boolean Offer(KernelMessage km) {
+        Slots slots = this.slots.get();
+        if (slots == null) {
+            this.slots.compareAndSet(null, new Slots(mask + 1)); // a sender that loses the race drops its copy
+            slots = this.slots.get();
+        }
+        AtomicReferenceArray<KernelMessage> buffer = slots.buffer;
+        AtomicLongArray sequence = slots.sequence;
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequence.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.set(idx, km);
+                    sequence.set(idx, pos + 1); // publishes the message to the receiver
+                    int depth = (int) Math.min(pos + 1 - head, mask + 1); // head may be stale, never more than the slots
+                    if (depth > maxDepth.get()) maxDepth.accumulateAndGet(depth, Math::max);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false; // slot still holds a message from the previous lap
+            } else {
+                pos = tail.get(); // another sender claimed it
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest message; only the owning process may call this
+     * @return Oldest message, null if the mailbox is empty
+     */
+    public KernelMessage Poll() {
+        Slots slots = this.slots.get();
+        if (slots == null) return null; // nothing was ever sent
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (slots.sequence.get(idx) != pos + 1) return null; // not filled yet
+        KernelMessage km = slots.buffer.get(idx);
+        slots.buffer.set(idx, null);
+        slots.sequence.set(idx, pos + mask + 1); // free for the sender one lap later
+        head = pos + 1;
+        return km;
+    }
+
+    public boolean IsEmpty() {
+        Slots slots = this.slots.get();
+        return slots == null || slots.sequence.get((int) (head & mask)) != head + 1;
+    }
+
+    /**
+     * Retrieves the number of queued messages
+     * @return Current depth
+     */
+    public int GetDepth() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Retrieves the deepest the mailbox has been
+     * @return Maximum depth seen
+     */
+    public int GetMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Marks the owner as blocked waiting for a message
+     */
+    public void SetWaiting() {
+        waiting.set(true);
+    }
+
+    /**
+     * Clears the waiting flag; exactly one caller wins, and only the winner may put the owner back on a run queue
+     * @return True if the owner was waiting and this call claimed the wakeup
+     */
+    public boolean ClaimWakeup() {
+        return waiting.compareAndSet(true, false);
+    }
+
+    /**
+     * The ring of message slots and their sequence numbers
+     */
+    private static final class Slots {
+        final AtomicReferenceArray<KernelMessage> buffer;
+        final AtomicLongArray sequence;
+
+        Slots(int size) {
+            this.buffer = new AtomicReferenceArray<>(size);
+            this.sequence = new AtomicLongArray(size);
+            for (int i=0; i<size; i++) sequence.set(i, i);
+        }
+    }
+}
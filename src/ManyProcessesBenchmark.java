@@ -0,0 +1,65 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts a large number of processes that all block at once, either waiting for a message or sleeping, and reports
+ * how long it took to get them all blocked, the heap each one costs while blocked, and how long it takes to wake
+ * every one of them and let it finish. Meant for virtual-thread mode, where 100k processes fit in one JVM; with
+ * platform threads the thread limit of the machine comes first, and thread stacks do not show in the heap figure.
+ * Usage: ManyProcessesBenchmark [processes] [cpus] [wait|sleep] [virtual|platform]
+ */
+public class ManyProcessesBenchmark {
+    private static final AtomicInteger blocked = new AtomicInteger(); // processes about to block
+    private static final AtomicInteger finished = new AtomicInteger();
+    private static boolean sleep;
+
+    public static void main(String[] args) throws Exception {
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int cpus = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        sleep = args.length > 2 && args[2].equals("sleep");
+        boolean virtualThreads = args.length <= 3 || !args[3].equals("platform");
+
+        long heapBefore = UsedHeap();
+        long start = System.nanoTime();
+        OS.Startup(new Blocker(), new KernelConfig().SetSeed(412).SetCpus(cpus).SetVirtualThreads(virtualThreads));
+        int[] pids = new int[processes];
+        pids[0] = OS.GetPidByName("Blocker");
+        for (int i=1; i<processes; i++) pids[i] = OS.CreateProcess(new Blocker());
+        long created = System.nanoTime();
+        while (blocked.get() < processes) Thread.sleep(10);
+        Thread.sleep(100); // the last ones to count themselves are still on their way into the kernel
+        long allBlocked = System.nanoTime();
+        long perProcess = (UsedHeap() - heapBefore) / processes;
+        System.out.println(processes + " processes " + (sleep ? "sleeping" : "waiting for a message") + ", " + cpus + " CPU(s), "
+                + (virtualThreads ? "virtual" : "platform") + " threads requested");
+        System.out.println("Created in " + (created - start) / 1_000_000 + "ms, all blocked after " + (allBlocked - start) / 1_000_000
+                + "ms, " + perProcess + " bytes of heap each, peak " + ManagementFactory.getThreadMXBean().getPeakThreadCount() + " platform threads");
+
+        long wake = System.nanoTime();
+        if (!sleep) for (int pid : pids) OS.SendMessage(new KernelMessage(-1, pid, 0, null));
+        while (finished.get() < processes) Thread.sleep(1);
+        long millis = Math.max(1, (System.nanoTime() - wake) / 1_000_000);
+        System.out.println("Woken and finished in " + millis + "ms (" + processes * 1000L / millis + " processes/s)"
+                + (sleep ? ", " + OS.pKernel.GetScheduler().GetWakeupLateness() : ""));
+        System.exit(0);
+    }
+
+    private static long UsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Blocks once, waiting for a message or sleeping for a second, then ends
+     */
+    static class Blocker extends UserlandProcess {
+        @Override
+        public void run() {
+            blocked.incrementAndGet();
+            if (sleep) OS.Sleep(1000);
+            else OS.WaitForMessage();
+            finished.incrementAndGet();
+        }
+    }
+}
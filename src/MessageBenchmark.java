@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Several producers flood one consumer with messages and the delivered rate is reported together with
+ * send and delivery latency. With a batch size above 1 both sides use SendMessages/WaitForMessages.
+ * Usage: MessageBenchmark [producers] [cpus] [seconds] [virtual] [batch]
+ */
+public class MessageBenchmark {
+    private static final AtomicLong received = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong(); // sends refused because the mailbox was full
+    private static volatile int consumerPid = -1;
+    private static int batch = 1;
+
+    public static void main(String[] args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int cpus = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        boolean virtualClock = args.length > 3 && args[3].equals("virtual");
+        batch = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+        OS.Startup(new Consumer(), new KernelConfig().SetCpus(cpus).SetSeed(412).SetVirtualClock(virtualClock));
+        consumerPid = OS.pKernel.GetPidByName("Consumer");
+        for (int i=0; i<producers; i++) OS.CreateProcess(new Producer());
+
+        Thread.sleep(seconds * 1000L);
+        Scheduler scheduler = OS.pKernel.GetScheduler();
+        KernelandProcess consumer = scheduler.GetProcessByPid(consumerPid);
+        System.out.println(producers + " producer(s), " + cpus + " CPU(s), " + seconds + "s, batch " + batch);
+        System.out.println("Throughput: " + received.get() / seconds + " messages/s, " + rejected.get() / seconds + " rejected/s, "
+                + scheduler.GetSwitchLatency().GetCount() / seconds + " switches/s");
+        System.out.println("Mailbox depth max " + consumer.mailbox.GetMaxDepth());
+        System.out.println(OS.pKernel.GetSendLatency());
+        System.out.println(OS.pKernel.GetDeliveryLatency());
+        System.exit(0);
+    }
+
+    /**
+     * Receives forever, counting each message
+     */
+    static class Consumer extends UserlandProcess {
+        @Override
+        public void run() {
+            while (true) {
+                if (batch > 1) received.addAndGet(OS.WaitForMessages(batch).length);
+                else if (OS.WaitForMessage() != null) received.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Sends to the consumer as fast as it can, backing off while the mailbox is full
+     */
+    static class Producer extends UserlandProcess {
+        @Override
+        public void run() {
+            int pid = OS.GetPid();
+            byte[] data = new byte[16];
+            KernelMessage[] messages = new KernelMessage[batch];
+            for (int i=0; i<batch; i++) messages[i] = new KernelMessage(pid, consumerPid, 0, data);
+            while (true) {
+                boolean full = batch > 1 ? OS.SendMessages(messages) < batch : !OS.SendMessage(messages[0]);
+                if (full) {
+                    rejected.incrementAndGet();
+                    OS.Sleep(1); // back off until the consumer drains its mailbox
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Random;
+
+/**
+ * The original probabilistic multi-level feedback queue: a priority is drawn with fixed odds each switch,
+ * and a process that uses up its quantum too many times in a row is demoted one level
+ */
+public class MlfqPolicy extends PriorityQueuesPolicy {
+    private final Random random;
+    private final double[] shares; // {realtime, realtime+interactive, interactive when no realtime is queued}
+    private final int demotionTimeouts;
+
+    /**
+     * @param seed Seed for the priority draws
+     * @param shares Cumulative odds: REALTIME, REALTIME+INTERACTIVE (when REALTIME is queued), INTERACTIVE (when it is not)
+     * @param demotionTimeouts Consecutive quantum expiries before a process is demoted
+     */
+    public MlfqPolicy(long seed, double[] shares, int demotionTimeouts) {
+        this.random = new Random(seed);
+        this.shares = shares.clone();
+        this.demotionTimeouts = demotionTimeouts;
+    }
+
+    /**
+     * Chooses a random, valid priority value from the Priority enums and takes the first process of that queue
+     */
+    @Override
+    public KernelandProcess PickNext() {
+        double probability = random.nextDouble();
+        Priority chosen = null;
+        if (!IsEmpty(Priority.REALTIME)) {
+            if (probability <= shares[0]) chosen = Priority.REALTIME;
+            else if (probability <= shares[1] && !IsEmpty(Priority.INTERACTIVE)) chosen = Priority.INTERACTIVE;
+            else if (!IsEmpty(Priority.BACKGROUND)) chosen = Priority.BACKGROUND;
+        } else if (!IsEmpty(Priority.INTERACTIVE)) {
+            if (probability <= shares[2]) chosen = Priority.INTERACTIVE;
+            else if (!IsEmpty(Priority.BACKGROUND)) chosen = Priority.BACKGROUND;
+            else chosen = Priority.INTERACTIVE;
+        } else if (!IsEmpty(Priority.BACKGROUND)) {
+            chosen = Priority.BACKGROUND;
+        }
+        return Poll(chosen);
+    }
+
+    /**
+     * Counts quantum expiries and demotes a process by one level once it reaches the limit; blocking resets the count
+     */
+    @Override
+    public void Account(KernelandProcess kp, long ranNanos, boolean preempted) {
+        if (!preempted) {
+            kp.SetTimeout(0);
+            return;
+        }
+        kp.SetTimeout(kp.GetTimeout() + 1);
+        if (kp.GetTimeout() < demotionTimeouts) return;
+        kp.SetTimeout(0);
+        switch (kp.GetPriority()) {
+            case REALTIME -> kp.SetPriority(Priority.INTERACTIVE);
+            case INTERACTIVE -> kp.SetPriority(Priority.BACKGROUND);
+            default -> { }
+        }
+    }
+}
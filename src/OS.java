@@ -1,6 +1,3 @@
-enum Priority {
-    REALTIME, BACKGROUND, INTERACTIVE
-}
 public class OS {
     static Kernel pKernel; // reference to one and only instance of Kernel
     static int page;
@@ -10,10 +7,20 @@ public class OS {
      * @param init Initialize a new UserlandProcess
      */
     public static void Startup(UserlandProcess init) throws Exception {
-        pKernel = new Kernel();
+        Startup(init, new KernelConfig());
+    }
+
+    /**
+     * Populates the Kernel member with a kernel built from the given options and calls CreateProcess on init
+     * @param init Initialize a new UserlandProcess
+     * @param config Startup options for the simulated machine
+     */
+    public static void Startup(UserlandProcess init, KernelConfig config) throws Exception {
+        pKernel = new Kernel(config);
         VirtualFileSystem vfs = pKernel.GetVFS();
         FakeFileSystem ffs = vfs.GetFFS();
         page = ffs.Open("swapFile");
+        pKernel.AttachSwapFile(page);
         CreateProcess(init);
     }
     /**
@@ -28,20 +35,31 @@ public class OS {
     public static int CreateProcess(UserlandProcess up, Priority priority) {
         return pKernel.CreateProcess(up, priority);
     }
+
+    /**
+     * Calls Kernel's Fork(): starts up as a copy-on-write clone of the calling process' memory
+     * @param up Code the child runs from its start, with the caller's memory
+     * @return PID of the child, -1 if the caller is not a running process
+     */
+    public static int Fork(UserlandProcess up) {
+        pKernel.Cooperate();
+        return pKernel.Fork(up);
+    }
     public static void Sleep(int milliseconds) {
         pKernel.Sleep(milliseconds);
     }
-    public static int Open(String s) { return pKernel.Open(s); }
-    public static void Close(int id) { pKernel.Close(id); }
-    public static byte[] Read(int id, int size) { return pKernel.Read(id, size); }
-    public static void Seek(int id, int to) { pKernel.Seek(id, to); }
-    public static void Write(int id, byte[] data) { pKernel.Write(id, data); }
+    public static int Open(String s) { pKernel.Cooperate(); return pKernel.Open(s); }
+    public static void Close(int id) { pKernel.Cooperate(); pKernel.Close(id); }
+    public static byte[] Read(int id, int size) { pKernel.Cooperate(); return pKernel.Read(id, size); }
+    public static void Seek(int id, int to) { pKernel.Cooperate(); pKernel.Seek(id, to); }
+    public static void Write(int id, byte[] data) { pKernel.Cooperate(); pKernel.Write(id, data); }
 
     /**
      * Returns the current process PID
      * @return PID of the current process
      */
     public static int GetPid() {
+        pKernel.Cooperate();
         return pKernel.GetPid();
     }
 
@@ -51,24 +69,97 @@ public class OS {
      * @return PID of the process with that name
      */
     public static int GetPidByName(String name) {
+        pKernel.Cooperate();
         return pKernel.GetPidByName(name);
     }
-    public static void SendMessage(KernelMessage km) {
-        pKernel.SendMessage(km);
+    public static boolean SendMessage(KernelMessage km) {
+        pKernel.Cooperate();
+        return pKernel.SendMessage(km);
     }
     public static KernelMessage WaitForMessage() {
+        pKernel.Cooperate();
         return pKernel.WaitForMessage();
     }
 
-    public static void GetMapping(int virtualPageNumber) { pKernel.GetMapping(virtualPageNumber); }
+    /**
+     * Sends a request and blocks until the target replies to it
+     * @param targetPid PID of the process to call
+     * @param whatMessage Message type of the request
+     * @param data Request payload
+     * @return The reply, null if the request could not be sent
+     */
+    public static KernelMessage Call(int targetPid, int whatMessage, byte[] data) {
+        pKernel.Cooperate();
+        return pKernel.Call(targetPid, whatMessage, data);
+    }
+
+    /**
+     * Answers a request received from OS.Call
+     * @param request The request being answered
+     * @param whatMessage Message type of the reply
+     * @param data Reply payload
+     * @return False if the request was not a call or was already answered
+     */
+    public static boolean Reply(KernelMessage request, int whatMessage, byte[] data) {
+        pKernel.Cooperate();
+        return pKernel.Reply(request, whatMessage, data);
+    }
+
+    /**
+     * Sends several messages with a single kernel call
+     * @param messages KernelMessages to send, in order
+     * @return Number of messages sent before the first failure
+     */
+    public static int SendMessages(KernelMessage[] messages) {
+        pKernel.Cooperate();
+        return pKernel.SendMessages(messages);
+    }
+
+    /**
+     * Receives up to max messages with a single kernel call, blocking only while there are none
+     * @param max Most messages to return
+     * @return Received messages in arrival order
+     */
+    public static KernelMessage[] WaitForMessages(int max) {
+        pKernel.Cooperate();
+        return pKernel.WaitForMessages(max);
+    }
+
+    public static void GetMapping(int virtualPageNumber) { pKernel.Cooperate(); pKernel.GetMapping(virtualPageNumber, false); }
+    public static void GetMapping(int virtualPageNumber, boolean write) { pKernel.Cooperate(); pKernel.GetMapping(virtualPageNumber, write); }
 
     public static int AllocateMemory(int size) {
-        if (size % 1024 != 0) return -1; // Not a multiple of 1024, failure
+        if (size <= 0) return -1; // Nothing to allocate, failure
+        pKernel.Cooperate();
         return pKernel.AllocateMemory(size);
     }
+    /**
+     * Calls Kernel's AllocateMemory(), asking for huge pages (KernelConfig.SetHugePageSize) where possible
+     * @param size Amount of memory to allocate
+     * @param hugePages True to back the memory with huge pages
+     * @return Start virtual address; -1 on failure
+     */
+    public static int AllocateMemory(int size, boolean hugePages) {
+        if (size <= 0) return -1; // Nothing to allocate, failure
+        pKernel.Cooperate();
+        return pKernel.AllocateMemory(size, hugePages);
+    }
     public static boolean FreeMemory(int pointer, int size) {
-        if ((pointer % 1024 != 0) || (size % 1024 != 0)) return false; // Not a multiple of 1024, failure
+        if ((pointer % 1024 != 0) || (size <= 0)) return false; // Not page aligned, failure
+        pKernel.Cooperate();
         return pKernel.FreeMemory(pointer, size);
     }
 
+    /**
+     * Calls Kernel's MapShared(): maps the shared segment with the given name, creating it zero-filled if needed
+     * @param name Name of the segment, the same in every process that maps it
+     * @param size Size of the segment in bytes
+     * @return Start virtual address of the mapping; -1 on failure
+     */
+    public static int MapShared(String name, int size) {
+        if (name == null || size <= 0) return -1; // Nothing to map, failure
+        pKernel.Cooperate();
+        return pKernel.MapShared(name, size);
+    }
+
 }
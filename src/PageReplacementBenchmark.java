@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays memory reference traces against every page replacement policy on a simulated memory of a fixed number of
+ * frames and reports faults, fault rate and write-backs. Accessed bits are set on every reference, dirty bits on
+ * every write. Synthetic traces are generated from the seed; a trace file adds one more, one reference per line as
+ * "R page", "W page" or just "page".
+ * Usage: PageReplacementBenchmark [frames] [references] [seed] [traceFile]
+ */
+public class PageReplacementBenchmark {
+    /**
+     * A sequence of page references
+     */
+    record Trace(String name, int[] pages, boolean[] writes) {}
+
+    public static void main(String[] args) throws IOException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int references = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 412;
+
+        List<Trace> traces = new ArrayList<>();
+        traces.add(Loop(frames, references));
+        traces.add(Skewed(frames, references, new Random(seed)));
+        traces.add(Phases(frames, references, new Random(seed)));
+        traces.add(HotSetWithScan(frames, references, new Random(seed)));
+        if (args.length > 3) traces.add(Load(args[3]));
+
+        KernelConfig config = new KernelConfig().SetWorkingSetWindow(2L * frames);
+        System.out.println(frames + " frames, WSClock window " + config.GetWorkingSetWindow() + " references");
+        for (Trace trace : traces) {
+            System.out.println(trace.name() + " (" + trace.pages().length + " references)");
+            for (PageReplacementPolicy.Type type : PageReplacementPolicy.Type.values()) {
+                Simulation simulation = new Simulation(frames, trace);
+                simulation.policy = PageReplacementPolicy.Create(type, frames, simulation, config);
+                long start = System.nanoTime();
+                simulation.Run(trace);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("  %-13s faults %9d  fault rate %6.2f%%  write-backs %9d  %4dns/reference%n", type,
+                        simulation.faults, 100.0 * simulation.faults / trace.pages().length, simulation.writeBacks,
+                        elapsed / trace.pages().length);
+            }
+        }
+    }
+
+    /**
+     * Simulated physical memory: which page each frame holds, with its accessed and dirty bits
+     */
+    static class Simulation implements PageReplacementPolicy.Frames {
+        private final int frames;
+        private final int[] framePage; // -1 while the frame is free
+        private final int[] pageFrame; // -1 while the page is not resident
+        private final boolean[] accessed, dirty;
+        private int used;
+        private long now, faults, writeBacks;
+        PageReplacementPolicy policy;
+
+        Simulation(int frames, Trace trace) {
+            this.frames = frames;
+            this.framePage = new int[frames];
+            this.pageFrame = new int[Arrays.stream(trace.pages()).max().orElse(0) + 1];
+            this.accessed = new boolean[frames];
+            this.dirty = new boolean[frames];
+            Arrays.fill(framePage, -1);
+            Arrays.fill(pageFrame, -1);
+        }
+
+        void Run(Trace trace) {
+            for (int i=0; i<trace.pages().length; i++) {
+                int page = trace.pages()[i];
+                boolean write = trace.writes()[i];
+                now++;
+                int frame = pageFrame[page];
+                if (frame != -1) {
+                    accessed[frame] = true;
+                    dirty[frame] |= write;
+                    continue;
+                }
+                faults++;
+                if (used < frames) {
+                    frame = used++;
+                } else {
+                    frame = policy.SelectVictim();
+                    if (dirty[frame]) writeBacks++;
+                    pageFrame[framePage[frame]] = -1;
+                }
+                framePage[frame] = page;
+                pageFrame[page] = frame;
+                accessed[frame] = true;
+                dirty[frame] = write;
+                policy.Loaded(frame, page);
+            }
+        }
+
+        @Override
+        public boolean IsEvictable(int frame) { return framePage[frame] != -1; }
+        @Override
+        public boolean IsAccessed(int frame) { return accessed[frame]; }
+        @Override
+        public void ClearAccessed(int frame) { accessed[frame] = false; }
+        @Override
+        public boolean IsDirty(int frame) { return dirty[frame]; }
+        @Override
+        public void Clean(int frame) {
+            writeBacks++;
+            dirty[frame] = false;
+        }
+        @Override
+        public long Now() { return now; }
+    }
+
+    /**
+     * Cyclic scan over a quarter more pages than fit, the worst case for LRU-like policies
+     */
+    static Trace Loop(int frames, int references) {
+        int[] pages = new int[references];
+        int span = frames + frames / 4;
+        for (int i=0; i<references; i++) pages[i] = i % span;
+        return new Trace("loop", pages, new boolean[references]);
+    }
+
+    /**
+     * Power-law popularity over four times as many pages as frames, 30% writes
+     */
+    static Trace Skewed(int frames, int references, Random random) {
+        int[] pages = new int[references];
+        boolean[] writes = new boolean[references];
+        for (int i=0; i<references; i++) {
+            double u = random.nextDouble();
+            pages[i] = (int) (4.0 * frames * u * u * u);
+            writes[i] = random.nextInt(10) < 3;
+        }
+        return new Trace("skewed", pages, writes);
+    }
+
+    /**
+     * Working set of 80% of memory that moves to a new place eight times, 20% writes
+     */
+    static Trace Phases(int frames, int references, Random random) {
+        int[] pages = new int[references];
+        boolean[] writes = new boolean[references];
+        int width = Math.max(1, frames * 4 / 5), base = 0;
+        for (int i=0; i<references; i++) {
+            if (i % Math.max(1, references / 8) == 0) base = random.nextInt(8 * frames);
+            pages[i] = base + random.nextInt(width);
+            writes[i] = random.nextInt(5) == 0;
+        }
+        return new Trace("phases", pages, writes);
+    }
+
+    /**
+     * Hot set of half the memory interleaved with a one-pass scan (a quarter of the references), 10% writes
+     */
+    static Trace HotSetWithScan(int frames, int references, Random random) {
+        int[] pages = new int[references];
+        boolean[] writes = new boolean[references];
+        int hot = Math.max(1, frames / 2), scan = hot;
+        for (int i=0; i<references; i++) {
+            pages[i] = random.nextInt(4) == 0 ? scan++ : random.nextInt(hot);
+            writes[i] = random.nextInt(10) == 0;
+        }
+        return new Trace("hot set + scan", pages, writes);
+    }
+
+    /**
+     * Reads a trace file, one reference per line
+     */
+    static Trace Load(String path) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(path));
+        int[] pages = new int[lines.size()];
+        boolean[] writes = new boolean[lines.size()];
+        int n = 0;
+        for (String line : lines) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].isEmpty()) continue;
+            writes[n] = fields.length > 1 && fields[0].equalsIgnoreCase("W");
+            pages[n++] = Integer.parseInt(fields[fields.length - 1]);
+        }
+        return new Trace(path, Arrays.copyOf(pages, n), Arrays.copyOf(writes, n));
+    }
+}
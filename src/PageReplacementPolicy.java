@@ -0,0 +1,91 @@
+/**
+ * Decides which resident page to evict when physical memory is full. Policies see frames only through a Frames
+ * view of the accessed and dirty bits, so the same implementation runs in the kernel and in trace replay.
+ * Implementations are not thread safe; the kernel only calls them under its memory lock
+ */
+public interface PageReplacementPolicy {
+    /**
+     * Available policies, selected through KernelConfig
+     */
+    enum Type { CLOCK, SECOND_CHANCE, WSCLOCK, ARC }
+
+    /**
+     * What a policy may ask about, and do to, a frame
+     */
+    interface Frames {
+        /**
+         * Flags whether a frame holds a page that may be evicted now (one private mapping, not pinned)
+         * @param frame Frame number
+         * @return True if evictable
+         */
+        boolean IsEvictable(int frame);
+
+        /**
+         * Reads the accessed bit of the page in a frame, set whenever the page is referenced
+         * @param frame Frame number
+         * @return True if referenced since the bit was last cleared
+         */
+        boolean IsAccessed(int frame);
+
+        /**
+         * Clears the accessed bit, so the next reference sets it again
+         * @param frame Frame number
+         */
+        void ClearAccessed(int frame);
+
+        /**
+         * Reads the dirty bit of the page in a frame
+         * @param frame Frame number
+         * @return True if evicting it needs a write-back
+         */
+        boolean IsDirty(int frame);
+
+        /**
+         * Writes a dirty page back without evicting it, so a later eviction needs no I/O
+         * @param frame Frame number
+         */
+        void Clean(int frame);
+
+        /**
+         * Logical time, advancing with every reference the pager sees
+         * @return Current time
+         */
+        long Now();
+    }
+
+    /**
+     * A page was just loaded into a frame (or the frame was handed to another page)
+     * @param frame Frame number
+     * @param page Identity of the page (address space and virtual page), used to recognise it when it comes back
+     */
+    void Loaded(int frame, long page);
+
+    /**
+     * A frame was freed because its page went away; it is not an eviction
+     * @param frame Frame number
+     */
+    void Released(int frame);
+
+    /**
+     * Picks the frame to evict and stops tracking it
+     * @return Frame number, -1 if no frame is evictable
+     */
+    int SelectVictim();
+
+    /**
+     * Builds a policy instance
+     * @param type Which policy
+     * @param frames Number of physical frames
+     * @param view Accessed and dirty bits of those frames
+     * @param config Tunables (WSClock window)
+     * @return New policy instance
+     */
+    static PageReplacementPolicy Create(Type type, int frames, Frames view, KernelConfig config) {
+        return switch (type) {
+            case CLOCK -> new ClockPolicy(frames, view);
+            case SECOND_CHANCE -> new SecondChancePolicy(view);
+            case WSCLOCK -> new WsClockPolicy(frames, view, config.GetWorkingSetWindow());
+            case ARC -> new ArcPolicy(frames, view);
+        };
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Two-level page table of one process: a directory of 2048 tables of 1024 entries each, covering 2^21 pages
+ * of 1KB (the whole 2GB of non-negative int addresses). A table is allocated the first time one of its pages is
+ * mapped and dropped again when its last page is unmapped, so memory follows the pages actually in use. The
+ * directory itself is only allocated with the first table, so a process that never touches memory costs nothing.
+ * Lookup is two array indexings
+ */
+public class PageTable {
+    static final int TABLE_BITS = 10;
+    static final int TABLE_SIZE = 1 << TABLE_BITS; // entries per table
+    static final int DIRECTORY_SIZE = 2048; // tables per process
+    static final int PAGES = DIRECTORY_SIZE * TABLE_SIZE; // virtual pages per process
+    private VirtualToPhysicalMapping[][] directory; // null until the first page is mapped
+    private int[] used; // mapped entries per table
+    private int size, tables;
+
+    /**
+     * Retrieves the page table entry of a virtual page
+     * @param virtualPageNumber Virtual page number
+     * @return Its mapping, null if the page is not mapped (or out of range)
+     */
+    public VirtualToPhysicalMapping Get(int virtualPageNumber) {
+        if (virtualPageNumber < 0 || virtualPageNumber >= PAGES || directory == null) return null;
+        VirtualToPhysicalMapping[] table = directory[virtualPageNumber >>> TABLE_BITS];
+        return table == null ? null : table[virtualPageNumber & (TABLE_SIZE - 1)];
+    }
+
+    /**
+     * Maps or unmaps a virtual page, allocating or dropping its table as needed
+     * @param virtualPageNumber Virtual page number
+     * @param mapping New entry, null to unmap
+     */
+    public void Set(int virtualPageNumber, VirtualToPhysicalMapping mapping) {
+        if (virtualPageNumber < 0 || virtualPageNumber >= PAGES) throw new IllegalArgumentException("Virtual page " + virtualPageNumber + " out of range");
+        if (directory == null) {
+            if (mapping == null) return;
+            directory = new VirtualToPhysicalMapping[DIRECTORY_SIZE][];
+            used = new int[DIRECTORY_SIZE];
+        }
+        int index = virtualPageNumber >>> TABLE_BITS;
+        VirtualToPhysicalMapping[] table = directory[index];
+        if (table == null) {
+            if (mapping == null) return;
+            table = directory[index] = new VirtualToPhysicalMapping[TABLE_SIZE];
+            tables++;
+        }
+        int offset = virtualPageNumber & (TABLE_SIZE - 1);
+        if (table[offset] == null && mapping != null) { used[index]++; size++; }
+        else if (table[offset] != null && mapping == null) { used[index]--; size--; }
+        table[offset] = mapping;
+        if (used[index] == 0) {
+            directory[index] = null;
+            tables--;
+        }
+    }
+
+    /**
+     * Finds the next mapped page at or after a virtual page, skipping whole tables that were never allocated
+     * @param virtualPageNumber Virtual page to start from
+     * @return Next mapped virtual page number, -1 if there is none
+     */
+    public int Next(int virtualPageNumber) {
+        if (directory == null) return -1;
+        for (int page = Math.max(0, virtualPageNumber); page < PAGES; ) {
+            VirtualToPhysicalMapping[] table = directory[page >>> TABLE_BITS];
+            if (table == null) {
+                page = ((page >>> TABLE_BITS) + 1) << TABLE_BITS;
+                continue;
+            }
+            if (table[page & (TABLE_SIZE - 1)] != null) return page;
+            page++;
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the number of mapped pages
+     * @return Mapped pages
+     */
+    public int Size() { return size; }
+
+    /**
+     * Retrieves how many second-level tables are allocated
+     * @return Allocated tables
+     */
+    public int Tables() { return tables; }
+}
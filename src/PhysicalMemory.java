@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Simulated RAM, addressed by physical address (frame * 1024 + offset). Every access from the MMU, the pager and
+ * the swap file goes through it, so the backend can be swapped without touching them. A range passed to one call
+ * never crosses a page boundary
+ */
+public interface PhysicalMemory {
+    /**
+     * Available backends, selected through KernelConfig
+     */
+    enum Type { HEAP, DIRECT }
+
+    byte Get(long address);
+    void Put(long address, byte value);
+
+    /**
+     * Copies bytes out of memory
+     * @param address Physical address of the first byte
+     * @param buffer Destination
+     * @param offset Index in buffer of the first byte
+     * @param length Number of bytes
+     */
+    void Read(long address, byte[] buffer, int offset, int length);
+
+    /**
+     * Copies bytes into memory
+     * @param address Physical address of the first byte
+     * @param buffer Source
+     * @param offset Index in buffer of the first byte
+     * @param length Number of bytes
+     */
+    void Write(long address, byte[] buffer, int offset, int length);
+
+    /**
+     * Copies bytes within memory, e.g. a page being copied on write
+     * @param from Physical address of the source
+     * @param to Physical address of the destination
+     * @param length Number of bytes
+     */
+    void Copy(long from, long to, int length);
+
+    /**
+     * Sets a range to one value, e.g. to zero a page on first touch
+     * @param address Physical address of the first byte
+     * @param length Number of bytes
+     * @param value Byte to fill with
+     */
+    void Fill(long address, int length, byte value);
+
+    /**
+     * Copies bytes out of memory into a buffer, e.g. a mapped swap file, without an intermediate array
+     * @param address Physical address of the first byte
+     * @param target Destination buffer
+     * @param index Index in target of the first byte
+     * @param length Number of bytes
+     */
+    void CopyTo(long address, ByteBuffer target, int index, int length);
+
+    /**
+     * Copies bytes from a buffer into memory
+     * @param source Source buffer
+     * @param index Index in source of the first byte
+     * @param address Physical address of the first byte
+     * @param length Number of bytes
+     */
+    void CopyFrom(ByteBuffer source, int index, long address, int length);
+
+    /**
+     * Retrieves the size of memory
+     * @return Size in bytes
+     */
+    long Size();
+
+    /**
+     * Builds a memory backend
+     * @param type Which backend
+     * @param bytes Size in bytes
+     * @return New, zeroed memory
+     */
+    static PhysicalMemory Create(Type type, long bytes) {
+        return switch (type) {
+            case HEAP -> new HeapMemory(bytes);
+            case DIRECT -> new DirectMemory(bytes);
+        };
+    }
+}
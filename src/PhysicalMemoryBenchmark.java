@@ -0,0 +1,53 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Compares the physical memory backends: random byte access, page-sized copies, and how long a full garbage
+ * collection takes while the memory is live. Large DIRECT sizes need -XX:MaxDirectMemorySize.
+ * Usage: PhysicalMemoryBenchmark [megabytes] [HEAP|DIRECT] [seed]
+ */
+public class PhysicalMemoryBenchmark {
+    public static void main(String[] args) {
+        long bytes = (args.length > 0 ? Long.parseLong(args[0]) : 512) << 20;
+        PhysicalMemory.Type[] types = args.length > 1 ? new PhysicalMemory.Type[]{PhysicalMemory.Type.valueOf(args[1])} : PhysicalMemory.Type.values();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 412;
+
+        for (PhysicalMemory.Type type : types) {
+            PhysicalMemory memory;
+            try {
+                memory = PhysicalMemory.Create(type, bytes);
+            } catch (IllegalArgumentException | OutOfMemoryError e) {
+                System.out.println(type + ": cannot allocate " + (bytes >> 20) + "MB (" + e.getMessage() + ")");
+                continue;
+            }
+            Random random = new Random(seed);
+            int operations = 10_000_000;
+            long start = System.nanoTime();
+            for (int i=0; i<operations; i++) {
+                long address = (random.nextLong() & Long.MAX_VALUE) % bytes;
+                memory.Put(address, (byte) i);
+                if (memory.Get(address) != (byte) i) throw new IllegalStateException("Lost a write at " + address);
+            }
+            long access = System.nanoTime() - start;
+
+            int pages = (int) Math.min(1_000_000, bytes / 1024 - 1);
+            start = System.nanoTime();
+            for (int i=0; i<pages; i++) memory.Copy((long) i * 1024, (long) (i + 1) * 1024, 1024);
+            long copy = System.nanoTime() - start;
+
+            long gcBefore = GcMillis();
+            start = System.nanoTime();
+            System.gc();
+            long gc = System.nanoTime() - start;
+            System.out.println(type + " " + (bytes >> 20) + "MB: random access " + access / operations + "ns, page copy " + copy / pages
+                    + "ns, full GC " + gc / 1_000_000 + "ms (collector time " + (GcMillis() - gcBefore) + "ms)");
+        }
+    }
+
+    private static long GcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0, gc.getCollectionTime());
+        return total;
+    }
+}
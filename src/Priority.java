@@ -0,0 +1,6 @@
+/**
+ * Scheduling class of a process, chosen at CreateProcess; the scheduling policies and load control rank processes by it
+ */
+enum Priority {
+    REALTIME, BACKGROUND, INTERACTIVE
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Base for the policies that keep one FIFO queue per priority (REALTIME/INTERACTIVE/BACKGROUND)
+ */
+public abstract class PriorityQueuesPolicy implements SchedulingPolicy {
+    private final Deque<KernelandProcess> realTimeKernelandProcess, interactivePriorityKernelandProcess, backgroundKernelandProcess;
+
+    protected PriorityQueuesPolicy() {
+        this.realTimeKernelandProcess = new ArrayDeque<>();
+        this.interactivePriorityKernelandProcess = new ArrayDeque<>();
+        this.backgroundKernelandProcess = new ArrayDeque<>();
+    }
+
+    @Override
+    public void Enqueue(KernelandProcess kp) {
+        RunQueue(kp.GetPriority()).addLast(kp);
+    }
+
+    /**
+     * Takes from the back of the queues, highest priority first, so the thief gets work that would have waited longest here
+     */
+    @Override
+    public KernelandProcess Steal() {
+        for (Priority priority : new Priority[]{Priority.REALTIME, Priority.INTERACTIVE, Priority.BACKGROUND}) {
+            KernelandProcess kp = RunQueue(priority).pollLast();
+            if (kp != null) return kp;
+        }
+        return null;
+    }
+
+    @Override
+    public List<KernelandProcess> Queued() {
+        List<KernelandProcess> queued = new ArrayList<>(realTimeKernelandProcess);
+        queued.addAll(interactivePriorityKernelandProcess);
+        queued.addAll(backgroundKernelandProcess);
+        return queued;
+    }
+
+    protected boolean IsEmpty(Priority priority) { return RunQueue(priority).isEmpty(); }
+
+    /**
+     * Takes the first process of a run queue, or the first of the highest non-empty one if that queue is empty
+     * @param priority A respective priority enum value
+     * @return First KernelandProcess, null if every queue is empty
+     */
+    protected KernelandProcess Poll(Priority priority) {
+        KernelandProcess kp = priority == null ? null : RunQueue(priority).pollFirst();
+        if (kp == null) kp = realTimeKernelandProcess.pollFirst();
+        if (kp == null) kp = interactivePriorityKernelandProcess.pollFirst();
+        if (kp == null) kp = backgroundKernelandProcess.pollFirst();
+        return kp;
+    }
+
+    private Deque<KernelandProcess> RunQueue(Priority priority) {
+        return switch (priority) {
+            case REALTIME -> realTimeKernelandProcess;
+            case BACKGROUND -> backgroundKernelandProcess;
+            case INTERACTIVE -> interactivePriorityKernelandProcess;
+        };
+    }
+}
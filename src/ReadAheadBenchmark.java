@@ -0,0 +1,67 @@
+import java.util.Random;
+
+/**
+ * Touches a buffer larger than physical memory sequentially (first touch, then re-reads paged in from swap) and
+ * then at random, and reports page faults, time and read-ahead use for each phase. Run it with a read-ahead of 0
+ * and of some window to compare.
+ * Usage: ReadAheadBenchmark [pages] [frames] [readAhead] [passes]
+ */
+public class ReadAheadBenchmark {
+    private static int pages, passes, readAhead;
+
+    public static void main(String[] args) throws Exception {
+        pages = args.length > 0 ? Integer.parseInt(args[0]) : 8192;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        readAhead = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        passes = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        OS.Startup(new Toucher(), new KernelConfig().SetSeed(412).SetPhysicalFrames(frames).SetReadAhead(readAhead));
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs every phase in one process
+     */
+    static class Toucher extends UserlandProcess {
+        private long faults, majorFaults, prefetched, hits, wasted, start;
+
+        @Override
+        public void run() {
+            System.out.println(pages + " pages, " + OS.pKernel.GetFrameAllocator().GetFrames() + " frames, read-ahead up to " + readAhead + " pages");
+            int address = OS.AllocateMemory(pages * 1024);
+            Mark();
+            for (int p=0; p<pages; p++) Write(address + p*1024, (byte) p);
+            Report("Sequential first touch");
+            for (int pass=0; pass<passes; pass++) {
+                for (int p=0; p<pages; p++) if (Read(address + p*1024) != (byte) p) throw new IllegalStateException("Page " + p + " corrupted");
+            }
+            Report("Sequential re-read x" + passes);
+            Random random = new Random(412);
+            for (int i=0; i<pages*passes; i++) {
+                int p = random.nextInt(pages);
+                if (Read(address + p*1024) != (byte) p) throw new IllegalStateException("Page " + p + " corrupted");
+            }
+            Report("Random reads x" + passes);
+            System.exit(0);
+        }
+
+        private void Mark() {
+            Kernel kernel = OS.pKernel;
+            faults = kernel.GetPageFaults();
+            majorFaults = kernel.GetMajorFaults();
+            prefetched = kernel.GetPrefetched();
+            hits = kernel.GetPrefetchHits();
+            wasted = kernel.GetPrefetchWasted();
+            start = System.nanoTime();
+        }
+
+        private void Report(String phase) {
+            Kernel kernel = OS.pKernel;
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println(phase + ": " + (kernel.GetPageFaults() - faults) + " faults (" + (kernel.GetMajorFaults() - majorFaults) + " from swap), "
+                    + (kernel.GetPrefetched() - prefetched) + " read ahead, " + (kernel.GetPrefetchHits() - hits) + " used, "
+                    + (kernel.GetPrefetchWasted() - wasted) + " wasted, " + millis + "ms");
+            Mark();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clients make round trips to one server and the round-trip rate and latency are reported.
+ * Mode "call" uses OS.Call/OS.Reply; mode "mailbox" uses SendMessage/WaitForMessage both ways for comparison.
+ * Usage: RpcBenchmark [clients] [cpus] [seconds] [call|mailbox]
+ */
+public class RpcBenchmark {
+    private static final AtomicLong roundTrips = new AtomicLong();
+    private static final LatencyStats roundTrip = new LatencyStats("Round trip latency");
+    private static volatile int serverPid = -1;
+    private static boolean useCall = true;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int cpus = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        useCall = args.length <= 3 || !args[3].equals("mailbox");
+
+        OS.Startup(new Server(), new KernelConfig().SetCpus(cpus).SetSeed(412));
+        serverPid = OS.pKernel.GetPidByName("Server");
+        for (int i=0; i<clients; i++) OS.CreateProcess(new Client());
+
+        Thread.sleep(seconds * 1000L);
+        Scheduler scheduler = OS.pKernel.GetScheduler();
+        System.out.println((useCall ? "Call/Reply" : "Mailbox") + ", " + clients + " client(s), " + cpus + " CPU(s), " + seconds + "s");
+        System.out.println("Throughput: " + roundTrips.get() / seconds + " round trips/s, " + scheduler.GetSwitchLatency().GetCount() / seconds + " switches/s");
+        System.out.println("Round trip p50 " + roundTrip.GetPercentileNanos(50) / 1000 + "us, p99 "
+                + roundTrip.GetPercentileNanos(99) / 1000 + "us, max " + roundTrip.GetMaxNanos() / 1000 + "us");
+        System.exit(0);
+    }
+
+    /**
+     * Answers every request with the same message type
+     */
+    static class Server extends UserlandProcess {
+        @Override
+        public void run() {
+            int pid = OS.GetPid();
+            while (true) {
+                KernelMessage request = OS.WaitForMessage();
+                if (request == null) continue;
+                if (useCall) OS.Reply(request, request.whatMessage, request.data);
+                else OS.SendMessage(new KernelMessage(pid, request.senderPid, request.whatMessage, request.data));
+            }
+        }
+    }
+
+    /**
+     * Makes back-to-back round trips to the server
+     */
+    static class Client extends UserlandProcess {
+        @Override
+        public void run() {
+            int pid = OS.GetPid();
+            byte[] data = new byte[16];
+            while (true) {
+                long start = System.nanoTime();
+                KernelMessage reply;
+                if (useCall) reply = OS.Call(serverPid, 0, data);
+                else reply = OS.SendMessage(new KernelMessage(pid, serverPid, 0, data)) ? OS.WaitForMessage() : null;
+                if (reply == null) continue;
+                roundTrip.Record(System.nanoTime() - start);
+                roundTrips.incrementAndGet();
+            }
+        }
+    }
+}
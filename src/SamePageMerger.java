@@ -0,0 +1,159 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Same-page merging daemon in the style of Linux KSM: a background thread wakes up at a fixed interval, hashes the
+ * next batch of frames, and merges frames with identical contents into one copy-on-write frame shared by every page
+ * table entry that held either. The frames are swept in order, one pass after another. A frame only becomes a
+ * candidate once its hash is the same as on the previous pass, so pages that are still being written are not merged
+ * just to be copied apart again. Candidates are found by hash and compared byte for byte before they are merged
+ */
+public class SamePageMerger {
+    /**
+     * What the merger needs from the kernel; called with the memory lock held
+     */
+    interface Frames {
+        /**
+         * Flags whether a frame can be merged: resident, and held only by page table entries the kernel can find
+         * (not by a message in flight or a shared segment)
+         * @param frame Frame number
+         * @return True if mergeable
+         */
+        boolean IsMergeable(int frame);
+
+        /**
+         * Write-protects every page table entry holding a frame copy-on-write and drops them from every TLB, so no
+         * process can change the frame without faulting into the kernel
+         * @param frame Frame number
+         */
+        void WriteProtect(int frame);
+
+        /**
+         * Points every page table entry holding duplicate at into and frees duplicate; both must be write-protected
+         * @param duplicate Frame to give up
+         * @param into Frame with the same contents to keep
+         */
+        void Merge(int duplicate, int into);
+    }
+
+    private final int frames;
+    private final Frames view;
+    private final ReentrantLock lock; // the kernel's memory lock
+    private final int pagesPerScan;
+    private final long[] checksums; // hash of each frame on the previous pass
+    private final Map<Long, Integer> candidates; // hash to a steady frame with that content, rebuilt every pass
+    private final byte[] page, other;
+    private final ScheduledExecutorService daemon; // null until Start
+    private int cursor; // next frame to scan
+    private long scanned, merged, fullScans, scanNanos, startNanos;
+
+    /**
+     * @param frames Number of physical frames
+     * @param view The kernel's side of merging
+     * @param lock Lock that guards page tables and frames
+     * @param pagesPerScan Frames hashed per wakeup
+     */
+    public SamePageMerger(int frames, Frames view, ReentrantLock lock, int pagesPerScan) {
+        this.frames = frames;
+        this.view = view;
+        this.lock = lock;
+        this.pagesPerScan = pagesPerScan;
+        this.checksums = new long[frames];
+        this.candidates = new HashMap<>();
+        this.page = new byte[1024];
+        this.other = new byte[1024];
+        this.daemon = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "same-page-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the background thread
+     * @param intervalMillis Pause between two batches
+     */
+    public void Start(int intervalMillis) {
+        startNanos = System.nanoTime();
+        daemon.scheduleWithFixedDelay(() -> Scan(pagesPerScan), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hashes the next frames and merges the ones whose contents match a candidate
+     * @param pages Number of frames to scan
+     */
+    public void Scan(int pages) {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            for (int n=0; n<pages; n++) {
+                int frame = cursor;
+                if (++cursor == frames) {
+                    cursor = 0;
+                    fullScans++;
+                    candidates.clear(); // entries of frames that changed or were freed go stale; the next pass rebuilds them
+                }
+                scanned++;
+                if (!view.IsMergeable(frame)) {
+                    checksums[frame] = 0;
+                    continue;
+                }
+                UserlandProcess.memory.Read(frame * 1024L, page, 0, 1024);
+                long hash = Hash(page);
+                boolean steady = hash == checksums[frame];
+                checksums[frame] = hash;
+                if (!steady) continue;
+                Integer candidate = candidates.get(hash);
+                if (candidate != null && candidate != frame && view.IsMergeable(candidate) && Matches(candidate)) {
+                    // a process could still write through a writable TLB entry until both frames are protected,
+                    // so they are compared once more afterwards; if one changed both just stay copy-on-write
+                    view.WriteProtect(frame);
+                    view.WriteProtect(candidate);
+                    UserlandProcess.memory.Read(frame * 1024L, page, 0, 1024);
+                    if (Matches(candidate)) {
+                        view.Merge(frame, candidate);
+                        merged++;
+                    }
+                    checksums[frame] = 0;
+                } else {
+                    candidates.put(hash, frame);
+                }
+            }
+            scanNanos += System.nanoTime() - start;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compares the page just read with a candidate frame
+     */
+    private boolean Matches(int candidate) {
+        UserlandProcess.memory.Read(candidate * 1024L, other, 0, 1024);
+        for (int i=0; i<1024; i++) if (page[i] != other[i]) return false;
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a page
+     */
+    private static long Hash(byte[] page) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : page) hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        return hash;
+    }
+
+    public long GetScanned() { return scanned; }
+    public long GetMerged() { return merged; }
+    public long GetFullScans() { return fullScans; }
+
+    public String toString() {
+        long elapsed = Math.max(1, System.nanoTime() - startNanos);
+        return "Same-page merging: " + scanned + " pages scanned (" + scanned * 1_000_000_000L / elapsed + "/s, "
+                + (scanned == 0 ? 0 : scanNanos / scanned) + "ns each), " + fullScans + " full scans, " + merged + " frames freed by merging";
+    }
+}
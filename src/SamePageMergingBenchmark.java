@@ -0,0 +1,68 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Several processes fill memory with mostly identical pages while the same-page merging daemon runs, and the frames
+ * in use are reported before and after merging, together with the daemon's scan rate. Each process then checks its
+ * pages and writes to the merged ones, which must be copied apart again without the others seeing the writes.
+ * Usage: SamePageMergingBenchmark [processes] [pages] [percentIdentical] [pagesPerScan] [seconds]
+ */
+public class SamePageMergingBenchmark {
+    private static int pages, identical;
+    private static final AtomicInteger filled = new AtomicInteger(), checked = new AtomicInteger(), failed = new AtomicInteger();
+    private static volatile boolean check;
+
+    public static void main(String[] args) throws Exception {
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        pages = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        identical = pages * (args.length > 2 ? Integer.parseInt(args[2]) : 75) / 100;
+        int pagesPerScan = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        int frames = processes * pages + 64;
+        OS.Startup(new Filler(), new KernelConfig().SetSeed(412).SetPhysicalFrames(frames).SetSamePageMerging(pagesPerScan, 10));
+        for (int i=1; i<processes; i++) OS.CreateProcess(new Filler());
+        while (filled.get() < processes) Thread.sleep(10);
+        FrameAllocator allocator = OS.pKernel.GetFrameAllocator();
+        int before = frames - allocator.GetFreeFrames();
+
+        Thread.sleep(seconds * 1000L);
+        int after = frames - allocator.GetFreeFrames();
+        System.out.println(processes + " processes x " + pages + " pages, " + identical + " identical per process");
+        System.out.println("Frames in use: " + before + " before merging, " + after + " after (" + (before - after) * 100 / Math.max(1, before) + "% saved)");
+        System.out.println(OS.pKernel.GetSamePageMerger());
+
+        check = true;
+        while (checked.get() < processes) Thread.sleep(10);
+        System.out.println("Contents after merging and copy-on-write: " + (failed.get() == 0 ? "intact" : failed.get() + " processes saw wrong data"));
+        System.exit(0);
+    }
+
+    /**
+     * Fills its pages (identical ones with the page number, the rest with its pid), waits, then checks and rewrites them
+     */
+    static class Filler extends UserlandProcess {
+        @Override
+        public void run() {
+            int pid = OS.GetPid();
+            int address = OS.AllocateMemory(pages * 1024);
+            for (int p=0; p<pages; p++) {
+                byte value = p < identical ? (byte) p : (byte) pid;
+                for (int i=0; i<1024; i+=16) Write(address + p*1024 + i, value);
+                if (p >= identical) Write(address + p*1024 + 1, (byte) p); // unique per process and page
+            }
+            filled.incrementAndGet();
+            while (!check) OS.Sleep(10);
+            boolean ok = true;
+            for (int p=0; p<identical; p++) {
+                ok &= Read(address + p*1024) == (byte) p;
+                Write(address + p*1024 + 16, (byte) (pid + 1)); // breaks the sharing
+            }
+            OS.Sleep(50); // let the others write too
+            for (int p=0; p<identical; p++) ok &= Read(address + p*1024 + 16) == (byte) (pid + 1) && Read(address + p*1024 + 32) == (byte) p;
+            for (int p=identical; p<pages; p++) ok &= Read(address + p*1024) == (byte) pid && Read(address + p*1024 + 1) == (byte) p;
+            if (!ok) failed.incrementAndGet();
+            checked.incrementAndGet();
+            while (true) OS.Sleep(1000);
+        }
+    }
+}
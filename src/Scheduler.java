@@ -1,38 +1,62 @@
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Scheduler {
-    private final List<KernelandProcess> realTimeKernelandProcess, backgroundKernelandProcess, interactivePriorityKernelandProcess;
-    private final List<Map.Entry<KernelandProcess, Instant>> sleepingProcess;
-    private KernelandProcess currentKernelandProcess; // reference to KernelandProcess currently running
+    private final CPU[] cpus; // each simulated CPU has its own current process, run queues and TLB
+    private final TimerWheel sleepingProcess; // sleeping processes keyed on their nanoTime deadline
     private final Map<String, Integer> nameIdMapping;
     private final Map<Integer, KernelandProcess> processIdMapping;
-    private final Map<Integer, KernelandProcess> waitingProcess;
-    private final Instant clock;
-    private static final Kernel kernel;
-    static {
-        try {
-            kernel = new Kernel();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
+    private final LatencyStats switchLatency; // time from Run() until the dispatched thread resumes
+    private final LatencyStats runQueueLatency; // time a ready process waited in a run queue before being dispatched
+    private final ThreadFactory threadFactory; // platform or virtual threads backing each process
+    private final SchedulerClock clock; // wall clock, or virtual clock in discrete-event mode
+    private final long quantumNanos, syscallNanos;
+    private final int mailboxCapacity;
+    private final Kernel kernel;
+    private final List<KernelandProcess> suspended; // processes load control suspended, longest suspended first
+    private final ReentrantLock loadLock; // guards suspended, the load control state of every process and its counters
+    private final int workingSetSamples; // samples in the working-set window
+    private static final int MAX_SUSPENDED_SAMPLES = 32; // a suspended process is resumed after this many samples even if it does not fit
+    private long samples, suspensions, resumptions;
 
     /**
-     * Constructs a scheduler which holds a list of processes, a timer instance, and a scheduled interrupt every 250ms
+     * Constructs a scheduler which holds the simulated CPUs, a timer instance, and a scheduled interrupt every 250ms.
+     * The interrupt never stops a thread itself; it only asks the running processes to yield at their next kernel call
+     * @param kernel The kernel owning this scheduler
+     * @param config Startup options (thread backing, number of CPUs)
      */
-    public Scheduler() {
-        realTimeKernelandProcess = Collections.synchronizedList(new LinkedList<>());
-        backgroundKernelandProcess = Collections.synchronizedList(new LinkedList<>());
-        interactivePriorityKernelandProcess = Collections.synchronizedList(new LinkedList<>());
-        sleepingProcess = Collections.synchronizedList(new LinkedList<>());
-        nameIdMapping = Collections.synchronizedMap(new HashMap<>());
-        processIdMapping = Collections.synchronizedMap(new HashMap<>());
-        waitingProcess = Collections.synchronizedMap(new HashMap<>());
-        currentKernelandProcess = null;
+    public Scheduler(Kernel kernel, KernelConfig config) {
+        this.kernel = kernel;
+        clock = config.IsVirtualClock() ? new SchedulerClock.Virtual() : new SchedulerClock.RealTime();
+        quantumNanos = config.GetQuantumMillis() * 1_000_000L;
+        syscallNanos = config.GetVirtualSyscallNanos();
+        mailboxCapacity = config.GetMailboxCapacity();
+        suspended = new ArrayList<>();
+        loadLock = new ReentrantLock();
+        workingSetSamples = config.GetWorkingSetSamples();
+        cpus = new CPU[config.GetCpus()];
+        // every CPU draws from its own stream so the decisions only depend on the seed and what each CPU saw
+        for (int i=0; i<cpus.length; i++) {
+            TLB tlb = new TLB(config.GetTlbEntries(), config.GetTlbWays(), config.GetTlbReplacement(), config.GetHugeTlbEntries());
+            cpus[i] = new CPU(i, SchedulingPolicy.Create(config.GetSchedulingPolicy(), config.GetSeed() + i, config), clock, tlb);
+        }
+        System.out.println("Scheduling policy " + config.GetSchedulingPolicy() + ", seed " + config.GetSeed() + ", " + cpus.length + " CPU(s)");
+        threadFactory = config.IsVirtualThreads() ? VirtualThreadFactory() : Thread::new;
+        sleepingProcess = new TimerWheel(1_000_000, clock.NowNanos()); // 1ms resolution
+        nameIdMapping = new ConcurrentHashMap<>();
+        processIdMapping = new ConcurrentHashMap<>();
         Timer timer = new Timer();
-        timer.schedule(new Interrupt(), 250, 250); // as per assignment requirements (#1)
-        clock = Instant.now(); // current UTC time
+        if (clock.IsVirtual()) {
+            // quanta and wakeups are driven by the virtual clock; this only guarantees an idle machine jumps ahead
+            timer.schedule(new Interrupt(), 10, 10);
+        } else {
+            timer.schedule(new Interrupt(), config.GetQuantumMillis(), config.GetQuantumMillis());
+            timer.schedule(new WakeupInterrupt(), 1, 1); // wakes sleepers even when every CPU is idle
+        }
+        switchLatency = new LatencyStats("Context switch latency");
+        runQueueLatency = new LatencyStats("Run queue latency");
     }
 
     /**
@@ -45,170 +69,551 @@ public class Scheduler {
     }
 
     /**
-     * Constructs a KernelandProcess, adds it to the list of processes, and calls SwitchProcess() if not running
+     * Constructs a KernelandProcess, queues it on the least loaded CPU, and dispatches it there if that CPU is idle
      * @param up A certain UserlandProcess to start
      * @param priority A certain priority to set to the UserlandProcess
      * @return PID of new process
      */
     public int CreateProcess(UserlandProcess up, Priority priority) {
-        KernelandProcess newProcess = new KernelandProcess(up, priority);
-        AppendKernelandProcess(priority, newProcess);
+        KernelandProcess newProcess = NewProcess(up, priority);
+        Start(newProcess);
+        return newProcess.GetPid();
+    }
+
+    /**
+     * Constructs and registers a KernelandProcess without queueing it, so its memory can be set up first
+     * @param up A certain UserlandProcess to start
+     * @param priority A certain priority to set to the UserlandProcess
+     * @return The new KernelandProcess
+     */
+    KernelandProcess NewProcess(UserlandProcess up, Priority priority) {
+        KernelandProcess newProcess = new KernelandProcess(up, priority, threadFactory, mailboxCapacity);
         this.nameIdMapping.put(newProcess.GetName(), newProcess.GetPid());
         this.processIdMapping.put(newProcess.GetPid(), newProcess);
-        if (this.currentKernelandProcess == null) SwitchProcess();
-        return newProcess.GetPid();
+        return newProcess;
+    }
+
+    /**
+     * Queues a process built by NewProcess on the least loaded CPU, and dispatches it there if that CPU is idle
+     * @param kp The KernelandProcess to start
+     */
+    void Start(KernelandProcess kp) {
+        AppendKernelandProcess(kp);
+        KickIdleCpus();
+    }
+
+    /**
+     * Retrieves the process making the kernel call
+     * @return KernelandProcess of the calling thread if it is running on a CPU, null otherwise
+     */
+    public KernelandProcess GetCurrentProcess() {
+        KernelandProcess kp = KernelandProcess.Self();
+        if (kp == null) return null;
+        CPU cpu = kp.GetCpu();
+        return cpu != null && cpu.current == kp ? kp : null;
     }
-    public synchronized KernelandProcess GetCurrentProcess() {
-        return this.currentKernelandProcess;
+
+    /**
+     * Builds virtual threads through reflection so the simulator still compiles and runs on JDKs without them
+     * @return Factory for virtual threads, or for platform threads if this JDK has none
+     */
+    private static ThreadFactory VirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.out.println("Virtual threads are not available on this JDK, using platform threads");
+            return Thread::new;
+        }
     }
     /**
-     * Adds a process to a specific priority queue
-     * @param p A respective priority enum value
+     * Adds a process to the run queue of the CPU it last ran on, or of the least loaded CPU if it never ran
      * @param kp A respective KernelandProcess
      */
-    private void AppendKernelandProcess(Priority p, KernelandProcess kp) {
-        switch (p) {
-            case REALTIME ->  realTimeKernelandProcess.add(kp);
-            case BACKGROUND -> backgroundKernelandProcess.add(kp);
-            case INTERACTIVE -> interactivePriorityKernelandProcess.add(kp);
+    private void AppendKernelandProcess(KernelandProcess kp) {
+        if (Park(kp)) return;
+        CPU cpu = kp.GetCpu();
+        if (cpu == null) {
+            cpu = cpus[0];
+            for (CPU c : cpus) if (c.GetQueued() < cpu.GetQueued()) cpu = c;
         }
+        cpu.Enqueue(kp);
     }
+
     /**
-     * If something is running, process stops; if process didn't finish, adds to list of processes
+     * If something is running on the CPU, process stops; if process didn't finish, adds to list of processes.
+     * Never blocks: the process that lost the CPU parks itself afterwards (see Yield)
+     * @param cpu The CPU to switch
      */
-    public void SwitchProcess() {
-        // as long as there are sleeping items, check if the process' wake time is up and give chance to run
-        while (!sleepingProcess.isEmpty() && sleepingProcess.get(0).getValue().isBefore(Instant.now())) { // get returns a tuple
-            KernelandProcess awake = sleepingProcess.remove(0).getKey(); // remove from sleeping processes and choose KernelandProcess
-            AppendKernelandProcess(awake.GetPriority(), awake);
+    public void SwitchProcess(CPU cpu) {
+        cpu.lock.lock();
+        try {
+            SwitchProcessLocked(cpu);
+        } finally {
+            cpu.lock.unlock();
         }
-        if (this.currentKernelandProcess != null) {
-            this.currentKernelandProcess.SetTimeout(this.currentKernelandProcess.GetTimeout() + 1);
-            this.currentKernelandProcess.ClearTLB(); // Clear TLB on task switch
-            this.currentKernelandProcess.Stop();
-
-            if (!this.currentKernelandProcess.IsDone()) {
-                if (this.currentKernelandProcess.GetTimeout() == 5) DemoteProcess(this.currentKernelandProcess);
-                else AppendKernelandProcess(this.currentKernelandProcess.GetPriority(), this.currentKernelandProcess);
+        KickIdleCpus();
+    }
+    private void SwitchProcessLocked(CPU cpu) {
+        WakeSleepers();
+        KernelandProcess current = cpu.current;
+        if (current != null) {
+            current.Stop();
+
+            if (!current.IsDone()) {
+                cpu.Account(current, true); // the policy may demote it here
+                if (!Park(current)) cpu.Enqueue(current);
             } else { // process is done so close its open devices
                 // Close all of its open devices
-                this.currentKernelandProcess.ClearMemory(); // Terminate process clears all available memory
-                this.nameIdMapping.remove(this.currentKernelandProcess.GetName());
-                this.processIdMapping.remove(this.currentKernelandProcess.GetPid());
-                int[] entries = this.currentKernelandProcess.GetKernelEntries();
+                kernel.ReleaseMemory(current); // Give back its frames and swap slots
+                ShootdownTLB(current);
+                if (current.suspended) {
+                    loadLock.lock();
+                    try {
+                        suspended.remove(current);
+                        current.suspended = false;
+                    } finally {
+                        loadLock.unlock();
+                    }
+                }
+                this.nameIdMapping.remove(current.GetName());
+                this.processIdMapping.remove(current.GetPid());
+                int[] entries = current.GetKernelEntries();
                 System.out.println("Process ended, closing open entries");
                 for (int i=0; i<10; i++) {
                     if (entries[i] != -1) kernel.Close(i);
                 }
             }
+            cpu.current = null;
         }
-        RunRandomPriority();
-    }
-    /**
-     * Chooses a random, valid priority value from the Priority enums
-     */
-    private void RunRandomPriority() {
-        double probability = Math.random();
-        if (!realTimeKernelandProcess.isEmpty()) {
-            if (probability <= 0.6) RunNextKernelandProcess(Priority.REALTIME);
-            else if (probability <= 0.9 && !interactivePriorityKernelandProcess.isEmpty()) RunNextKernelandProcess(Priority.INTERACTIVE);
-            else if (!backgroundKernelandProcess.isEmpty()) RunNextKernelandProcess(Priority.BACKGROUND);
-        } else if (!interactivePriorityKernelandProcess.isEmpty()) {
-            if (probability <= 0.75) RunNextKernelandProcess(Priority.INTERACTIVE);
-            else if (!backgroundKernelandProcess.isEmpty()) RunNextKernelandProcess(Priority.BACKGROUND);
-            else RunNextKernelandProcess(Priority.INTERACTIVE);
-        } else if (!backgroundKernelandProcess.isEmpty()) {
-            RunNextKernelandProcess(Priority.BACKGROUND);
+        KernelandProcess next = PickNext(cpu);
+        if (next == null && clock.IsVirtual() && AllIdle()) {
+            // discrete-event mode: nothing can run until the next wakeup, so jump straight to it
+            long deadline = sleepingProcess.NextDeadline();
+            if (deadline != Long.MAX_VALUE) {
+                clock.AdvanceTo(deadline);
+                WakeSleepers();
+                next = PickNext(cpu);
+            }
         }
+        if (next != null) RunOn(cpu, next);
     }
 
     /**
-     * Demotes a process by one level if it ran to timeout 5 times
-     * @param kp A certain KernelandProcess to demote down one priority
+     * Takes the next process to run on a CPU from its own run queue, or steals one, passing over suspended processes
+     * @param cpu The CPU about to dispatch
+     * @return Next KernelandProcess, null if there is nothing to run
      */
-    private void DemoteProcess(KernelandProcess kp) {
-        kp.SetTimeout(0);
-        switch (kp.GetPriority()) {
-            case REALTIME -> {
-                //System.out.println("Demoting from REALTIME to Interactive");
-                kp.SetPriority(Priority.INTERACTIVE);
-                interactivePriorityKernelandProcess.add(kp);
-            }
-            case INTERACTIVE -> {
-                //System.out.println("Demoting from INTERACTIVE to BACKGROUND");
-                kp.SetPriority(Priority.BACKGROUND);
-                backgroundKernelandProcess.add(kp);
-            }
-            default -> backgroundKernelandProcess.add(kp);
+    private KernelandProcess PickNext(CPU cpu) {
+        while (true) {
+            KernelandProcess next = cpu.PickNext();
+            if (next == null) next = StealWork(cpu);
+            if (next == null || !Park(next)) return next;
+        }
+    }
+
+    /**
+     * Holds back a process that load control suspended instead of queueing or running it; ControlLoad queues it
+     * again when it resumes the process
+     * @param kp A runnable KernelandProcess
+     * @return True if the process was parked
+     */
+    private boolean Park(KernelandProcess kp) {
+        if (!kp.suspended) return false;
+        loadLock.lock();
+        try {
+            if (!kp.suspended) return false; // resumed in the meantime
+            kp.parked = true;
+            return true;
+        } finally {
+            loadLock.unlock();
         }
     }
+
     /**
-     * Chooses the first item in the respective priority queue to run
-     * @param priority A respective priority enum value
+     * Load control, run after every working-set sample. While the working sets of the processes not suspended add
+     * up to more than physical memory, suspends the least important of them: background before interactive before
+     * real-time, the largest working set first. Then resumes suspended processes in the order they were suspended,
+     * as long as their working set fits in what is left, or once one waited MAX_SUSPENDED_SAMPLES so none starves.
+     * One process always keeps running, and a process is not suspended again until its working set was measured
+     * over a whole window since it was resumed. A suspended process keeps its frames until the pager takes them
+     * @param frames Number of physical frames
      */
-    private void RunNextKernelandProcess(Priority priority) {
-        switch (priority) {
-            case REALTIME -> {
-                KernelandProcess firstItem = realTimeKernelandProcess.remove(0); // first item
-                this.currentKernelandProcess = firstItem;
-                firstItem.Run();
+    void ControlLoad(int frames) {
+        List<KernelandProcess> stopped = new ArrayList<>(), resumed = new ArrayList<>();
+        loadLock.lock();
+        try {
+            samples++;
+            List<KernelandProcess> active = new ArrayList<>();
+            long demand = 0;
+            for (KernelandProcess kp : processIdMapping.values()) {
+                if (kp.suspended || kp.IsDone()) continue;
+                active.add(kp);
+                demand += kp.GetWorkingSet();
+            }
+            while (demand > frames && active.size() > 1) {
+                KernelandProcess victim = null;
+                for (KernelandProcess kp : active) {
+                    if (samples - kp.loadControlSample < workingSetSamples) continue; // working set not measured since it was resumed
+                    if (victim == null || Importance(kp) < Importance(victim)
+                            || Importance(kp) == Importance(victim) && kp.GetWorkingSet() > victim.GetWorkingSet()) victim = kp;
+                }
+                if (victim == null) break;
+                active.remove(victim);
+                demand -= victim.GetWorkingSet();
+                victim.suspended = true;
+                victim.loadControlSample = samples;
+                suspended.add(victim);
+                stopped.add(victim);
+                suspensions++;
             }
-            case BACKGROUND -> {
-                KernelandProcess firstItem = backgroundKernelandProcess.remove(0);
-                this.currentKernelandProcess = firstItem;
-                firstItem.Run();
+            for (Iterator<KernelandProcess> it = suspended.iterator(); it.hasNext(); ) {
+                KernelandProcess kp = it.next();
+                if (kp.loadControlSample == samples) break; // suspended just now, and so is everything after it
+                boolean starving = samples - kp.loadControlSample >= MAX_SUSPENDED_SAMPLES;
+                if (!active.isEmpty() && !starving && demand + kp.GetWorkingSet() > frames) break; // none overtakes the first
+                it.remove();
+                kp.suspended = false;
+                kp.loadControlSample = samples;
+                active.add(kp);
+                demand += kp.GetWorkingSet();
+                if (kp.parked) resumed.add(kp);
+                kp.parked = false;
+                resumptions++;
             }
-            case INTERACTIVE -> {
-                KernelandProcess firstItem = interactivePriorityKernelandProcess.remove(0);
-                this.currentKernelandProcess = firstItem;
-                firstItem.Run();
+        } finally {
+            loadLock.unlock();
+        }
+        for (KernelandProcess kp : stopped) {
+            CPU cpu = kp.GetCpu();
+            if (cpu != null && cpu.current == kp) kp.RequestStop(); // gives up its CPU at its next kernel call
+        }
+        for (KernelandProcess kp : resumed) AppendKernelandProcess(kp);
+        if (!resumed.isEmpty()) KickIdleCpus();
+    }
+
+    /**
+     * Ranks priorities for load control; the least important process is suspended first
+     */
+    private static int Importance(KernelandProcess kp) {
+        return switch (kp.GetPriority()) {
+            case BACKGROUND -> 0;
+            case INTERACTIVE -> 1;
+            case REALTIME -> 2;
+        };
+    }
+
+    /**
+     * Flags whether no CPU is running a process
+     * @return True if every CPU is idle
+     */
+    private boolean AllIdle() {
+        for (CPU c : cpus) if (c.current != null) return false;
+        return true;
+    }
+
+    /**
+     * Moves every sleeping process whose wake time is up back onto a run queue, as one batch
+     * @return True if any process woke up
+     */
+    private boolean WakeSleepers() {
+        List<KernelandProcess> awake = sleepingProcess.Advance(clock.NowNanos());
+        for (KernelandProcess kp : awake) AppendKernelandProcess(kp);
+        return !awake.isEmpty();
+    }
+
+    /**
+     * Gives every idle CPU a chance to pick up queued work (its own, or stolen from a busy CPU)
+     */
+    private void KickIdleCpus() {
+        int queued = 0;
+        for (CPU c : cpus) queued += c.GetQueued();
+        for (CPU c : cpus) {
+            if (queued == 0) return;
+            if (c.current != null || !c.lock.tryLock()) continue; // busy, or already switching
+            try {
+                if (c.current == null) {
+                    SwitchProcessLocked(c);
+                    if (c.current != null) queued--;
+                }
+            } finally {
+                c.lock.unlock();
             }
-            default -> { }
         }
     }
 
+    /**
+     * Work stealing: an idle CPU takes a process from the back of the busiest CPU's run queues
+     * @param thief The idle CPU
+     * @return Stolen KernelandProcess, null if every other CPU's queues are empty
+     */
+    private KernelandProcess StealWork(CPU thief) {
+        CPU victim = null;
+        for (CPU c : cpus) {
+            if (c != thief && c.GetQueued() > 0 && (victim == null || c.GetQueued() > victim.GetQueued())) victim = c;
+        }
+        return victim == null ? null : victim.Steal();
+    }
+
+    /**
+     * TLB shootdown: drops a process' translation of one page from every CPU's TLB, after its page table entry changed.
+     * Entries survive task switches, so CPUs the process ran on earlier may still hold the old translation
+     * @param kp Process whose page table changed
+     * @param virtualPageNumber Virtual page whose mapping changed
+     */
+    public void ShootdownTLB(KernelandProcess kp, int virtualPageNumber) {
+        for (CPU c : cpus) c.GetTLB().Invalidate(kp.GetPid(), virtualPageNumber);
+    }
+
+    /**
+     * Drops every translation of a process from every CPU's TLB, after it exits or its whole address space changed
+     * @param kp Process whose page table changed
+     */
+    public void ShootdownTLB(KernelandProcess kp) {
+        for (CPU c : cpus) c.GetTLB().InvalidateAll(kp.GetPid());
+    }
+
+    /**
+     * Makes a process the current one of a CPU, points it at that CPU's TLB and hands it the CPU
+     * @param cpu The CPU to run on
+     * @param kp The KernelandProcess to run
+     */
+    private void RunOn(CPU cpu, KernelandProcess kp) {
+        runQueueLatency.Record(clock.NowNanos() - kp.GetEnqueuedNanos());
+        kp.SetDispatchedNanos(clock.NowNanos());
+        cpu.current = kp;
+        kp.SetCpu(cpu);
+        kp.Run();
+    }
+
     /**
      * Used to schedule an interrupt in Scheduler constructor
      */
     private class Interrupt extends TimerTask {
         @Override
-        public void run() { SwitchProcess(); }
+        public void run() { Tick(); }
     }
 
     /**
-     * Adds the process to the list of sleeping processes based on time asleep, stops current process and switches processes
+     * Timer wheel tick: wakes due sleepers and lets idle CPUs pick them up
+     */
+    private class WakeupInterrupt extends TimerTask {
+        @Override
+        public void run() { if (WakeSleepers()) KickIdleCpus(); }
+    }
+
+    /**
+     * Quantum expiry on every CPU: asks each running process to yield at its next kernel call, or dispatches one if the CPU is idle
+     */
+    private void Tick() {
+        for (CPU cpu : cpus) {
+            cpu.lock.lock();
+            try {
+                if (cpu.current == null) SwitchProcessLocked(cpu);
+                else if (!clock.IsVirtual()) cpu.current.RequestStop();
+            } finally {
+                cpu.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Kernel-call boundary: gives up the CPU if the timer asked the calling process to stop.
+     * In discrete-event mode every kernel call costs virtual time, and the quantum is checked here instead of by a timer
+     */
+    public void Cooperate() {
+        KernelandProcess kp = GetCurrentProcess();
+        if (kp == null) return;
+        if (clock.IsVirtual()) {
+            clock.Advance(syscallNanos);
+            if (WakeSleepers()) KickIdleCpus();
+            if (clock.NowNanos() - kp.GetDispatchedNanos() >= quantumNanos) kp.RequestStop();
+        }
+        if (kp.IsStopRequested()) Yield(kp);
+    }
+
+    /**
+     * Switches away from the calling process and parks its thread until it is dispatched again
+     * @param kp The calling (current) KernelandProcess
+     */
+    private void Yield(KernelandProcess kp) {
+        CPU cpu = kp.GetCpu();
+        cpu.lock.lock();
+        try {
+            if (cpu.current != kp) return;
+            SwitchProcessLocked(cpu);
+        } finally {
+            cpu.lock.unlock();
+        }
+        KickIdleCpus();
+        switchLatency.Record(kp.WaitForTurn());
+    }
+
+    /**
+     * Takes the current process off its CPU without re-queueing it, records it wherever it waits (enlist),
+     * dispatches another one, then parks the calling thread until something puts it back on a run queue.
+     * The process is off the CPU before it is enlisted, so another CPU may wake and dispatch it right away
+     * @param kp The calling (current) KernelandProcess
+     * @param enlist Records the process as sleeping/waiting
+     */
+    private void Block(KernelandProcess kp, Runnable enlist) {
+        CPU cpu = kp.GetCpu();
+        cpu.lock.lock();
+        try {
+            cpu.current = null;
+            kp.Stop();
+            cpu.Account(kp, false);
+            enlist.run();
+            SwitchProcessLocked(cpu);
+        } finally {
+            cpu.lock.unlock();
+        }
+        KickIdleCpus();
+        switchLatency.Record(kp.WaitForTurn());
+    }
+
+    /**
+     * Direct process switch: the calling process leaves its CPU and the given process runs there at once,
+     * without passing through a run queue or the scheduling policy
+     * @param kp The calling (current) KernelandProcess
+     * @param next Process to run instead; the caller must own its wakeup, so it is on no run queue and no CPU
+     * @param enlist Records the caller as waiting; null to leave the caller runnable on its run queue
+     */
+    private void SwitchTo(KernelandProcess kp, KernelandProcess next, Runnable enlist) {
+        CPU cpu = kp.GetCpu();
+        cpu.lock.lock();
+        try {
+            cpu.current = null;
+            kp.Stop();
+            cpu.Account(kp, false);
+            if (enlist != null) enlist.run();
+            else cpu.Enqueue(kp);
+            next.SetEnqueuedNanos(clock.NowNanos()); // it never waited in a run queue
+            if (Park(next)) next = PickNext(cpu); // suspended by load control; runs once it is resumed
+            if (next != null) RunOn(cpu, next);
+        } finally {
+            cpu.lock.unlock();
+        }
+        KickIdleCpus();
+        switchLatency.Record(kp.WaitForTurn());
+    }
+
+    /**
+     * Blocks the current process until the reply to its OS.Call arrives
+     * @param callee Callee whose wakeup the caller claimed, run directly on this CPU; null if it was not waiting
+     */
+    public void AwaitReply(KernelandProcess callee) {
+        KernelandProcess kp = GetCurrentProcess();
+        if (kp == null) return;
+        Runnable enlist = () -> {
+            kp.replies.SetWaiting();
+            // the callee may already have replied from another CPU
+            if (!kp.replies.IsEmpty() && kp.replies.ClaimWakeup()) AppendKernelandProcess(kp);
+        };
+        if (callee != null) SwitchTo(kp, callee, enlist);
+        else Block(kp, enlist);
+    }
+
+    /**
+     * Hands the caller's CPU straight to a process whose wakeup it claimed; the caller stays runnable.
+     * Falls back to an ordinary wakeup if the caller is not a process
+     * @param kp Process to run, e.g. the client of an OS.Call that was just replied to
+     */
+    public void HandOff(KernelandProcess kp) {
+        KernelandProcess caller = GetCurrentProcess();
+        if (caller == null) RestoreWaitingProcess(kp);
+        else SwitchTo(caller, kp, null);
+    }
+
+    /**
+     * Adds the process to the timer wheel with its wake-up deadline, stops current process and switches processes
      * @param milliseconds Number of milliseconds to sleep
      */
-    public synchronized void Sleep(int milliseconds) {
-        // add to list of sleeping processes
-        this.currentKernelandProcess.SetTimeout(0);
-        sleepingProcess.add(new AbstractMap.SimpleEntry<>(this.currentKernelandProcess, clock.plusMillis(milliseconds)));
-        sleepingProcess.sort(Map.Entry.comparingByValue()); // sort the list in the order of wake-up time
-        var tmp = this.currentKernelandProcess;
-        //System.out.println(tmp);
-        this.currentKernelandProcess = null;
-        tmp.Stop();
-        SwitchProcess();
+    public void Sleep(int milliseconds) {
+        KernelandProcess kp = GetCurrentProcess();
+        if (kp == null) return;
+        long deadline = clock.NowNanos() + milliseconds * 1_000_000L;
+        Block(kp, () -> sleepingProcess.Add(kp, deadline)); // add to the sleeping processes
     }
+
+    /**
+     * Blocks the current process until a message lands in its mailbox
+     */
     public void AppendWaitingProcesses() {
-        this.currentKernelandProcess.SetTimeout(0);
-        waitingProcess.put(this.currentKernelandProcess.GetPid(), this.currentKernelandProcess);
-        SwitchProcess();
-    }
-    public boolean IsWaiting(KernelandProcess kp) {
-        return waitingProcess.containsValue(kp);
+        KernelandProcess kp = GetCurrentProcess();
+        if (kp == null) return;
+        Block(kp, () -> {
+            kp.mailbox.SetWaiting();
+            // a sender on another CPU may have queued a message before we were marked waiting
+            if (!kp.mailbox.IsEmpty() && kp.mailbox.ClaimWakeup()) AppendKernelandProcess(kp);
+        });
     }
+
+    /**
+     * Puts a process blocked in WaitForMessage back on a run queue; the caller must have won Mailbox.ClaimWakeup()
+     * @param kp The receiving KernelandProcess
+     */
     public void RestoreWaitingProcess(KernelandProcess kp) {
-        KernelandProcess waiting = waitingProcess.remove(kp.GetPid());
-        AppendKernelandProcess(waiting.GetPriority(), waiting);
-        SwitchProcess();
+        RestoreWaitingProcesses(List.of(kp));
+    }
+
+    /**
+     * Puts every woken receiver of a batch back on a run queue, then gives up the caller's CPU once
+     * @param woken Receivers whose wakeup the caller claimed
+     */
+    public void RestoreWaitingProcesses(List<KernelandProcess> woken) {
+        for (KernelandProcess kp : woken) AppendKernelandProcess(kp);
+        KernelandProcess caller = GetCurrentProcess();
+        if (caller != null) Yield(caller);
+        else KickIdleCpus();
+    }
+
+    /**
+     * Called by a process thread once its userland code returned; tears the process down and dispatches the next one
+     */
+    public void Exit() {
+        KernelandProcess kp = GetCurrentProcess();
+        if (kp == null) return;
+        SwitchProcess(kp.GetCpu());
+    }
+
+    /**
+     * Retrieves the context switch latency measured between Run() and the dispatched thread resuming
+     * @return Context switch latency statistics
+     */
+    public LatencyStats GetSwitchLatency() {
+        return switchLatency;
+    }
+
+    /**
+     * Retrieves the scheduler's time source (virtual in discrete-event mode)
+     * @return Scheduler clock
+     */
+    public SchedulerClock GetClock() {
+        return clock;
+    }
+
+    /**
+     * Retrieves how late sleeping processes were woken relative to their requested wake time
+     * @return Wakeup lateness statistics
+     */
+    public LatencyStats GetWakeupLateness() {
+        return sleepingProcess.GetLateness();
+    }
+
+    /**
+     * Retrieves how long ready processes waited in a run queue before being dispatched (tail latency per policy)
+     * @return Run queue latency statistics
+     */
+    public LatencyStats GetRunQueueLatency() {
+        return runQueueLatency;
     }
     /**
      * Returns the PID of the process
      * @return PID of the process
      */
     public int GetPid() {
-        return this.currentKernelandProcess.GetPid();
+        return GetCurrentProcess().GetPid();
     }
     /**
      * Returns the PID of the process with that name
@@ -226,52 +631,37 @@ public class Scheduler {
     public KernelandProcess GetProcessByPid(int pid) {
         return this.processIdMapping.get(pid);
     }
-    public KernelandProcess GetRandomProcess() {
-        List<List<KernelandProcess>> nonEmptyLists = new ArrayList<>();
-        if (!realTimeKernelandProcess.isEmpty()) nonEmptyLists.add(realTimeKernelandProcess);
-        if (!backgroundKernelandProcess.isEmpty()) nonEmptyLists.add(backgroundKernelandProcess);
-        if (!interactivePriorityKernelandProcess.isEmpty()) nonEmptyLists.add(interactivePriorityKernelandProcess);
-        List<KernelandProcess> chooseRandomNonEmptyList = nonEmptyLists.get(new Random().nextInt(nonEmptyLists.size()));
-        KernelandProcess randomProcess;
-        int pageNumberToSwap;
-        // Get random process and find a page that has physical memory.
-        // If there are none, pick a different process and repeat until a new page is found
-        do {
-            randomProcess = chooseRandomNonEmptyList.get(new Random().nextInt(chooseRandomNonEmptyList.size()));
-            System.out.println(randomProcess.virtualPageToPhysicalPage);
-            pageNumberToSwap = FindPhysicalMemory(randomProcess); // Will be -1 if can't find page
-        }while(pageNumberToSwap==-1);
-        int oldRandomProcessPhysicalPage = currentKernelandProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber;
-        System.out.println("Swapping values of pages, old page="+oldRandomProcessPhysicalPage+" and new page index="+pageNumberToSwap);
-        currentKernelandProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber = randomProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber;
-        // Write victim page to disk and assign new block of swap file if there isn't already one
-        kernel.GetVFS().GetFFS().Write(0, new byte[randomProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber*1024]);
-        // Swap
-        randomProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber = randomProcess.virtualPageToPhysicalPage[pageNumberToSwap].diskPageNumber;
-        // Set victim physical page to -1
-        randomProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber = -1;
-        if (oldRandomProcessPhysicalPage != currentKernelandProcess.virtualPageToPhysicalPage[pageNumberToSwap].physicalPageNumber) {
-            // New physical page number
-            if (currentKernelandProcess.virtualPageToPhysicalPage[pageNumberToSwap].diskPageNumber != -1) {
-                // Load old data in and populate physical page
-                System.out.println("Loading old data in and populating physical page");
-                kernel.GetVFS().GetFFS().Write(0, kernel.GetVFS().Read(0, oldRandomProcessPhysicalPage*1024));
-            } else {
-                // Populate memory with zeros
-                System.out.println("Populating with zeros");
-                kernel.GetVFS().GetFFS().Write(0, new byte[0]);
-            }
+
+    /**
+     * Retrieves every live process, e.g. for the working-set sampler
+     * @return Live KernelandProcesses
+     */
+    Collection<KernelandProcess> GetProcesses() {
+        return this.processIdMapping.values();
+    }
+
+    public long GetSuspensions() {
+        loadLock.lock();
+        try {
+            return suspensions;
+        } finally {
+            loadLock.unlock();
         }
-        nonEmptyLists.clear();
-        return randomProcess;
-    }
-    private int FindPhysicalMemory(KernelandProcess randomProcess) {
-        for (int i = 0; i < randomProcess.virtualPageToPhysicalPage.length; i++) {
-            System.out.println(randomProcess.virtualPageToPhysicalPage[i].physicalPageNumber);
-            if (randomProcess.virtualPageToPhysicalPage[i].physicalPageNumber != -1) {
-                return i;
-            }
+    }
+    public long GetResumptions() {
+        loadLock.lock();
+        try {
+            return resumptions;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    public int GetSuspended() {
+        loadLock.lock();
+        try {
+            return suspended.size();
+        } finally {
+            loadLock.unlock();
         }
-        return -1;
     }
 }
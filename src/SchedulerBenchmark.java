@@ -0,0 +1,62 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a fixed mix of CPU-bound and interactive processes under one scheduling policy and reports
+ * throughput and run-queue tail latency. Usage: SchedulerBenchmark [policy] [seed] [cpus] [seconds] [virtual]
+ */
+public class SchedulerBenchmark {
+    private static final AtomicLong work = new AtomicLong(); // iterations completed by every worker
+
+    public static void main(String[] args) throws Exception {
+        SchedulingPolicy.Type policy = args.length > 0 ? SchedulingPolicy.Type.valueOf(args[0]) : SchedulingPolicy.Type.MLFQ;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 412;
+        int cpus = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        boolean virtualClock = args.length > 4 && args[4].equals("virtual");
+
+        OS.Startup(new Worker(), new KernelConfig().SetSchedulingPolicy(policy).SetSeed(seed).SetCpus(cpus).SetVirtualClock(virtualClock));
+        for (int i=0; i<3; i++) OS.CreateProcess(new Worker(), Priority.REALTIME);
+        for (int i=0; i<8; i++) OS.CreateProcess(new Worker(), Priority.BACKGROUND);
+        for (int i=0; i<8; i++) OS.CreateProcess(new Interactive(), Priority.INTERACTIVE);
+
+        Thread.sleep(seconds * 1000L);
+        Scheduler scheduler = OS.pKernel.GetScheduler();
+        LatencyStats runQueue = scheduler.GetRunQueueLatency();
+        System.out.println("Policy " + policy + ", seed " + seed + ", " + cpus + " CPU(s), " + seconds + "s");
+        System.out.println("Throughput: " + work.get() / seconds + " iterations/s, " + scheduler.GetSwitchLatency().GetCount() / seconds + " switches/s");
+        System.out.println("Run queue latency p50 " + runQueue.GetPercentileNanos(50) / 1000 + "us, p99 "
+                + runQueue.GetPercentileNanos(99) / 1000 + "us, max " + runQueue.GetMaxNanos() / 1000 + "us");
+        System.out.println(scheduler.GetWakeupLateness());
+        System.out.println("Simulated time: " + (virtualClock ? scheduler.GetClock().NowNanos() / 1_000_000 + "ms" : "real time"));
+        System.exit(0);
+    }
+
+    /**
+     * CPU-bound process; every iteration ends in a kernel call so it can be preempted
+     */
+    static class Worker extends UserlandProcess {
+        @Override
+        public void run() {
+            long x = 0;
+            while (true) {
+                for (int i=0; i<1000; i++) x = x * 31 + i;
+                if (x == 42) System.out.println(x); // keep the loop from being optimised away
+                work.incrementAndGet();
+                OS.GetPid();
+            }
+        }
+    }
+
+    /**
+     * Mostly sleeping process standing in for interactive load
+     */
+    static class Interactive extends UserlandProcess {
+        @Override
+        public void run() {
+            while (true) {
+                work.incrementAndGet();
+                OS.Sleep(5);
+            }
+        }
+    }
+}
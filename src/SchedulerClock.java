@@ -0,0 +1,52 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time source for the scheduler. Real-time mode follows System.nanoTime(); discrete-event mode keeps a virtual
+ * clock that only moves when the kernel charges for work or jumps straight to the next pending event
+ */
+public interface SchedulerClock {
+    /**
+     * Retrieves the current time
+     * @return Current time in nanoseconds (only differences are meaningful)
+     */
+    long NowNanos();
+
+    /**
+     * Flags whether this clock is virtual (discrete-event mode)
+     * @return True if time only moves through Advance/AdvanceTo
+     */
+    boolean IsVirtual();
+
+    /**
+     * Moves virtual time forward; ignored by the real-time clock
+     * @param nanos Amount of time to add
+     */
+    void Advance(long nanos);
+
+    /**
+     * Jumps virtual time forward to an event; never moves backwards; ignored by the real-time clock
+     * @param nanos Time of the event
+     */
+    void AdvanceTo(long nanos);
+
+    /**
+     * Wall clock, as used before the discrete-event mode existed
+     */
+    class RealTime implements SchedulerClock {
+        public long NowNanos() { return System.nanoTime(); }
+        public boolean IsVirtual() { return false; }
+        public void Advance(long nanos) { }
+        public void AdvanceTo(long nanos) { }
+    }
+
+    /**
+     * Discrete-event clock starting at 0
+     */
+    class Virtual implements SchedulerClock {
+        private final AtomicLong now = new AtomicLong();
+        public long NowNanos() { return now.get(); }
+        public boolean IsVirtual() { return true; }
+        public void Advance(long nanos) { now.addAndGet(nanos); }
+        public void AdvanceTo(long nanos) { now.accumulateAndGet(nanos, Math::max); }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.List;
+
+/**
+ * Decides which ready process a CPU runs next. Each CPU gets its own instance, which owns that CPU's run queue.
+ * Implementations are not thread safe (the CPU serialises calls) and draw every random choice from a seeded
+ * Random, so a run can be replayed by reusing the seed
+ */
+public interface SchedulingPolicy {
+    /**
+     * Available policies, selected through KernelConfig
+     */
+    enum Type { MLFQ, STRICT_PRIORITY, LOTTERY, STRIDE, CFS }
+
+    /**
+     * Adds a ready process to the run queue
+     * @param kp A respective KernelandProcess
+     */
+    void Enqueue(KernelandProcess kp);
+
+    /**
+     * Removes and returns the process to run next
+     * @return Next KernelandProcess to run, null if the run queue is empty
+     */
+    KernelandProcess PickNext();
+
+    /**
+     * Removes the process another (idle) CPU should take, normally the least urgent one
+     * @return KernelandProcess to migrate, null if the run queue is empty
+     */
+    KernelandProcess Steal();
+
+    /**
+     * Charges a process for the time it just spent on the CPU; called before it is queued again or blocks
+     * @param kp The KernelandProcess leaving the CPU
+     * @param ranNanos Time it ran since it was dispatched
+     * @param preempted True if its quantum expired, false if it blocked (sleep/wait)
+     */
+    void Account(KernelandProcess kp, long ranNanos, boolean preempted);
+
+    /**
+     * Retrieves a snapshot of the queued processes
+     * @return Queued processes, in no particular order
+     */
+    List<KernelandProcess> Queued();
+
+    /**
+     * Builds a policy instance for one CPU
+     * @param type Which policy
+     * @param seed Seed for every random choice the policy makes
+     * @param config Tunables (MLFQ thresholds and demotion)
+     * @return New policy instance
+     */
+    static SchedulingPolicy Create(Type type, long seed, KernelConfig config) {
+        return switch (type) {
+            case MLFQ -> new MlfqPolicy(seed, config.GetMlfqShares(), config.GetDemotionTimeouts());
+            case STRICT_PRIORITY -> new StrictPriorityPolicy();
+            case LOTTERY -> new LotteryPolicy(seed);
+            case STRIDE -> new StridePolicy();
+            case CFS -> new CfsPolicy();
+        };
+    }
+
+    /**
+     * Scheduling weight of a priority: tickets for lottery, 1/stride for stride, load weight for CFS
+     * @param priority A respective priority enum value
+     * @return Relative weight (BACKGROUND = 1)
+     */
+    static int Weight(Priority priority) {
+        return switch (priority) {
+            case REALTIME -> 16;
+            case INTERACTIVE -> 4;
+            case BACKGROUND -> 1;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Second chance with clean-first eviction: frames queue in the order their pages were loaded. A referenced page at
+ * the head goes to the back with its accessed bit cleared; an unreferenced dirty page is written back and goes to
+ * the back too; the first unreferenced clean page is evicted, so the fault itself never waits on a write-back
+ */
+public class SecondChancePolicy implements PageReplacementPolicy {
+    private final Frames view;
+    private final LinkedHashSet<Integer> queue; // frames, oldest load first
+
+    public SecondChancePolicy(Frames view) {
+        this.view = view;
+        this.queue = new LinkedHashSet<>();
+    }
+
+    @Override
+    public void Loaded(int frame, long page) {
+        queue.remove(frame);
+        queue.add(frame);
+    }
+
+    @Override
+    public void Released(int frame) {
+        queue.remove(frame);
+    }
+
+    @Override
+    public int SelectVictim() {
+        for (int n = 3 * queue.size(); n > 0; n--) { // after three laps every bit has been cleared
+            Iterator<Integer> head = queue.iterator();
+            int frame = head.next();
+            head.remove();
+            if (view.IsEvictable(frame) && !view.IsAccessed(frame) && !view.IsDirty(frame)) return frame;
+            if (view.IsEvictable(frame)) {
+                if (view.IsAccessed(frame)) view.ClearAccessed(frame); // second chance
+                else view.Clean(frame); // written back now, so it can go without I/O when it comes round again
+            }
+            queue.add(frame);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Named range of physical pages that OS.MapShared maps into any number of address spaces, so identical processes
+ * can hold one copy of a library or a table instead of one each. The frames are allocated when the segment is
+ * created and stay resident: they are never evicted or copied on write. The segment holds one reference to each
+ * frame, and every page table entry mapping it holds another
+ */
+public class SharedSegment {
+    final String name;
+    final int[] frames; // physical page of each page of the segment
+    int mappings; // address spaces that currently map the segment; it is destroyed when the last one unmaps it
+
+    /**
+     * @param name Name processes map the segment by
+     * @param frames Physical pages backing it, one reference each held by the segment
+     */
+    SharedSegment(String name, int[] frames) {
+        this.name = name;
+        this.frames = frames;
+        this.mappings = 0;
+    }
+
+    public String toString() {
+        return "Shared segment " + name + ": " + frames.length + " pages, " + mappings + " mappings";
+    }
+}
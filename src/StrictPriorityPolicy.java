@@ -0,0 +1,12 @@
+/**
+ * Always runs the highest non-empty priority, round-robin within it. No demotion, so lower levels can starve
+ */
+public class StrictPriorityPolicy extends PriorityQueuesPolicy {
+    @Override
+    public KernelandProcess PickNext() {
+        return Poll(null);
+    }
+
+    @Override
+    public void Account(KernelandProcess kp, long ranNanos, boolean preempted) { }
+}
@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Stride scheduling: the process with the lowest pass runs next, and running advances its pass by a stride
+ * inversely proportional to its priority weight. Fully deterministic, no randomness needed
+ */
+public class StridePolicy implements SchedulingPolicy {
+    private static final long STRIDE1 = 1 << 20;
+    private final TreeSet<KernelandProcess> queued;
+
+    public StridePolicy() {
+        this.queued = new TreeSet<>(Comparator.comparingLong(KernelandProcess::GetVirtualRuntime).thenComparingInt(KernelandProcess::GetPid));
+    }
+
+    /**
+     * A process joining the queue starts no earlier than the current minimum pass so it cannot monopolise the CPU
+     */
+    @Override
+    public void Enqueue(KernelandProcess kp) {
+        if (!queued.isEmpty()) kp.SetVirtualRuntime(Math.max(kp.GetVirtualRuntime(), queued.first().GetVirtualRuntime()));
+        queued.add(kp);
+    }
+
+    @Override
+    public KernelandProcess PickNext() {
+        return queued.pollFirst();
+    }
+
+    @Override
+    public KernelandProcess Steal() {
+        return queued.pollLast();
+    }
+
+    /**
+     * Every dispatch costs one stride, whether the process used its quantum or blocked
+     */
+    @Override
+    public void Account(KernelandProcess kp, long ranNanos, boolean preempted) {
+        kp.SetVirtualRuntime(kp.GetVirtualRuntime() + STRIDE1 / SchedulingPolicy.Weight(kp.GetPriority()));
+    }
+
+    @Override
+    public List<KernelandProcess> Queued() {
+        return new ArrayList<>(queued);
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Backing store for evicted pages: the swap file opened in OS.Startup, cut into 1KB slots.
+ * A slot holds one page; slot n lives at byte offset n*1024. Freed slots are reused before the file grows.
+ * The file is mapped into memory 16MB at a time as it grows, so paging in and out is a bulk copy between
+ * physical memory and the mapping, with no system call and no logging on the fault path. The mapping is only
+ * forced to disk if asked to, in batches, on a background thread.
+ * Not thread-safe; the kernel only calls it under its memory lock
+ */
+public class SwapManager {
+    static final int PAGE_SIZE = 1024;
+    static final int MAX_SLOTS = Integer.MAX_VALUE / PAGE_SIZE; // 2GB of swap
+    private static final int CHUNK_BITS = 14; // slots per mapped chunk, as a power of two
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks; // chunk n maps slots n*CHUNK_SLOTS up to (n+1)*CHUNK_SLOTS
+    private final int forceBatch; // page-outs between forces, 0 to leave write-back to the OS
+    private final Set<Integer> unforced; // indexes of the chunks written since the last force (buffers hash their contents)
+    private final ExecutorService flusher; // null if forceBatch is 0
+    private int[] slotReferences; // page table entries sharing each slot, after a fork
+    private int[] freeSlots; // stack of released slots
+    private int freeCount;
+    private int highWater; // slots below this were handed out at least once
+    private int sinceForce;
+    private long pageIns, pageOuts, forces;
+
+    /**
+     * @param channel Channel of the swap file
+     * @param forceBatch Number of page-outs after which the written chunks are forced to disk asynchronously,
+     *                   0 to never force (swap contents do not have to survive the simulation)
+     */
+    public SwapManager(FileChannel channel, int forceBatch) {
+        this.channel = channel;
+        this.chunks = new ArrayList<>();
+        this.forceBatch = forceBatch;
+        this.unforced = new LinkedHashSet<>();
+        this.flusher = forceBatch == 0 ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "swap-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slotReferences = new int[64];
+        this.freeSlots = new int[64];
+    }
+
+    /**
+     * Hands out a slot for a page about to be written
+     * @return Slot number, -1 if the swap file is full
+     */
+    public int AllocateSlot() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == MAX_SLOTS) return -1;
+            slot = highWater++;
+            if (slot == slotReferences.length) slotReferences = Arrays.copyOf(slotReferences, slot * 2);
+        }
+        slotReferences[slot] = 1;
+        return slot;
+    }
+
+    /**
+     * Adds a page table entry to the holders of a slot, when a forked child inherits a swapped page
+     * @param slot Slot number
+     */
+    public void ShareSlot(int slot) {
+        slotReferences[slot]++;
+    }
+
+    /**
+     * Flags whether more than one page table entry holds a slot; such a slot must not be overwritten
+     * @param slot Slot number
+     * @return True if shared
+     */
+    public boolean IsShared(int slot) {
+        return slotReferences[slot] > 1;
+    }
+
+    /**
+     * Drops one holder of a slot, and gives the slot back once no page table entry refers to it anymore
+     * @param slot Slot number from AllocateSlot
+     */
+    public void FreeSlot(int slot) {
+        if (--slotReferences[slot] > 0) return;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Flags whether a page without a slot could still be written out
+     * @return True if no slot is left
+     */
+    public boolean IsFull() {
+        return freeCount == 0 && highWater == MAX_SLOTS;
+    }
+
+    /**
+     * Writes one physical page to its slot
+     * @param frame Physical page number to write
+     * @param slot Destination slot
+     */
+    public void PageOut(int frame, int slot) {
+        UserlandProcess.memory.CopyTo((long) frame * PAGE_SIZE, Chunk(slot), (slot & (CHUNK_SLOTS - 1)) * PAGE_SIZE, PAGE_SIZE);
+        pageOuts++;
+        if (flusher != null) {
+            unforced.add(slot >>> CHUNK_BITS);
+            if (++sinceForce >= forceBatch) Force();
+        }
+    }
+
+    /**
+     * Reads one page from its slot into a physical page
+     * @param slot Source slot
+     * @param frame Physical page number to fill
+     */
+    public void PageIn(int slot, int frame) {
+        UserlandProcess.memory.CopyFrom(Chunk(slot), (slot & (CHUNK_SLOTS - 1)) * PAGE_SIZE, (long) frame * PAGE_SIZE, PAGE_SIZE);
+        pageIns++;
+    }
+
+    /**
+     * Maps the chunk of the swap file holding a slot, growing the file the first time
+     */
+    private MappedByteBuffer Chunk(int slot) {
+        int index = slot >>> CHUNK_BITS;
+        try {
+            while (chunks.size() <= index) {
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * CHUNK_SLOTS * PAGE_SIZE, (long) CHUNK_SLOTS * PAGE_SIZE));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return chunks.get(index);
+    }
+
+    /**
+     * Hands the chunks written since the last force to the background thread
+     */
+    private void Force() {
+        List<MappedByteBuffer> batch = new ArrayList<>();
+        for (int index : unforced) batch.add(chunks.get(index));
+        unforced.clear();
+        sinceForce = 0;
+        forces++;
+        flusher.execute(() -> batch.forEach(MappedByteBuffer::force));
+    }
+
+    public long GetPageIns() { return pageIns; }
+    public long GetPageOuts() { return pageOuts; }
+    public long GetForces() { return forces; }
+    public int GetSlotsInUse() { return highWater - freeCount; }
+
+    public String toString() {
+        return "Swap: " + GetSlotsInUse() + " slots in use, " + pageIns + " pages in, " + pageOuts + " pages out, " + forces + " forces";
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Set-associative translation lookaside buffer of one CPU. Entries are tagged with the address space id (the pid)
+ * of the process they belong to, so nothing has to be flushed on a task switch. The set is picked from the low bits
+ * of the virtual page number, and a full set evicts by LRU or by clock (second chance).
+ * A few fully associative entries, evicted by LRU, each map a whole aligned huge page, so one entry covers a run of
+ * pages that would otherwise take one entry each. They are only probed when the ordinary entries miss.
+ * The running process looks up without locking (optimistic read); the kernel inserts, and any CPU may shoot entries down
+ */
+public class TLB {
+    /**
+     * How a full set picks the entry to evict
+     */
+    enum Replacement { LRU, CLOCK }
+
+    private static final int INVALID = -1;
+    private final int ways, setMask;
+    private final Replacement replacement;
+    private final int[] asids, virtualPages, physicalPages;
+    private final boolean[] writable;
+    private final long[] lastUsed; // LRU: lookup counter value when the entry was last hit
+    private final boolean[] referenced; // CLOCK: set on every hit, cleared as the hand passes
+    private final int[] hands; // CLOCK: next way to consider, per set
+    private final int[] hugeAsids, hugeFirstPages, hugeFirstFrames, hugeOrders; // huge entries: 2^order pages from the first
+    private final boolean[] hugeWritable;
+    private final long[] hugeLastUsed;
+    private long useCounter;
+    private final StampedLock lock; // writers take it; lookups validate against it instead
+
+    /**
+     * @param entries Total number of entries, rounded up to a power of two
+     * @param ways Entries per set (1 for direct-mapped, entries for fully associative)
+     * @param replacement Eviction order within a set
+     * @param hugeEntries Number of huge page entries
+     */
+    public TLB(int entries, int ways, Replacement replacement, int hugeEntries) {
+        int size = entries <= 1 ? 1 : Integer.highestOneBit(entries - 1) << 1;
+        this.ways = Math.max(1, Math.min(ways, size));
+        int sets = Integer.highestOneBit(size / this.ways);
+        this.setMask = sets - 1;
+        this.replacement = replacement;
+        int slots = sets * this.ways;
+        this.asids = new int[slots];
+        this.virtualPages = new int[slots];
+        this.physicalPages = new int[slots];
+        this.writable = new boolean[slots];
+        this.lastUsed = new long[slots];
+        this.referenced = new boolean[slots];
+        this.hands = new int[sets];
+        this.hugeAsids = new int[hugeEntries];
+        this.hugeFirstPages = new int[hugeEntries];
+        this.hugeFirstFrames = new int[hugeEntries];
+        this.hugeOrders = new int[hugeEntries];
+        this.hugeWritable = new boolean[hugeEntries];
+        this.hugeLastUsed = new long[hugeEntries];
+        this.lock = new StampedLock();
+        Arrays.fill(asids, INVALID);
+        Arrays.fill(hugeAsids, INVALID);
+    }
+
+    /**
+     * Translates a virtual page for the running process
+     * @param asid Address space id of the process
+     * @param virtualPageNumber Virtual page to translate
+     * @param write True if the access is a write; read-only entries then miss
+     * @return Physical page number, -1 on a miss
+     */
+    public int Lookup(int asid, int virtualPageNumber, boolean write) {
+        long stamp = lock.tryOptimisticRead();
+        int physicalPage = Probe(asid, virtualPageNumber, write);
+        if (lock.validate(stamp)) return physicalPage;
+        stamp = lock.readLock(); // an insert or shootdown raced with us
+        try {
+            return Probe(asid, virtualPageNumber, write);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int Probe(int asid, int virtualPageNumber, boolean write) {
+        int base = (virtualPageNumber & setMask) * ways;
+        for (int i=base; i<base+ways; i++) {
+            if (asids[i] == asid && virtualPages[i] == virtualPageNumber) {
+                if (write && !writable[i]) return -1;
+                // replacement hints only, a lost update just makes eviction slightly less accurate
+                if (replacement == Replacement.LRU) lastUsed[i] = ++useCounter;
+                else referenced[i] = true;
+                return physicalPages[i];
+            }
+        }
+        for (int i=0; i<hugeAsids.length; i++) {
+            int offset = virtualPageNumber - hugeFirstPages[i];
+            if (hugeAsids[i] == asid && offset >= 0 && offset >>> hugeOrders[i] == 0) {
+                if (write && !hugeWritable[i]) return -1;
+                hugeLastUsed[i] = ++useCounter;
+                return hugeFirstFrames[i] + offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Loads a translation, replacing an older one for the same page or evicting within its set
+     * @param asid Address space id of the process
+     * @param virtualPageNumber Virtual page
+     * @param physicalPageNumber Physical page it maps to
+     * @param isWritable False for pages that must fault on write (copy-on-write)
+     */
+    public void Insert(int asid, int virtualPageNumber, int physicalPageNumber, boolean isWritable) {
+        long stamp = lock.writeLock();
+        try {
+            int set = virtualPageNumber & setMask;
+            int base = set * ways;
+            int slot = -1;
+            for (int i=base; i<base+ways && slot == -1; i++) {
+                if (asids[i] == asid && virtualPages[i] == virtualPageNumber) slot = i;
+            }
+            for (int i=base; i<base+ways && slot == -1; i++) {
+                if (asids[i] == INVALID) slot = i;
+            }
+            if (slot == -1) slot = Victim(set, base);
+            asids[slot] = asid;
+            virtualPages[slot] = virtualPageNumber;
+            physicalPages[slot] = physicalPageNumber;
+            writable[slot] = isWritable;
+            lastUsed[slot] = ++useCounter;
+            referenced[slot] = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Loads a translation for a whole huge page, replacing the least recently used huge entry
+     * @param asid Address space id of the process
+     * @param firstVirtualPage First virtual page of the huge page, aligned to its size
+     * @param firstPhysicalPage First of the contiguous frames backing it
+     * @param order Log2 of the number of pages
+     * @param isWritable False if a write must trap into the kernel
+     */
+    public void InsertHuge(int asid, int firstVirtualPage, int firstPhysicalPage, int order, boolean isWritable) {
+        if (hugeAsids.length == 0) return;
+        long stamp = lock.writeLock();
+        try {
+            int slot = 0;
+            for (int i=0; i<hugeAsids.length; i++) {
+                if (hugeAsids[i] == asid && hugeFirstPages[i] == firstVirtualPage) { slot = i; break; }
+                if (hugeAsids[i] == INVALID || hugeLastUsed[i] < hugeLastUsed[slot]) slot = i;
+            }
+            hugeAsids[slot] = asid;
+            hugeFirstPages[slot] = firstVirtualPage;
+            hugeFirstFrames[slot] = firstPhysicalPage;
+            hugeOrders[slot] = order;
+            hugeWritable[slot] = isWritable;
+            hugeLastUsed[slot] = ++useCounter;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Picks the entry of a full set to evict
+     */
+    private int Victim(int set, int base) {
+        if (replacement == Replacement.LRU) {
+            int victim = base;
+            for (int i=base+1; i<base+ways; i++) if (lastUsed[i] < lastUsed[victim]) victim = i;
+            return victim;
+        }
+        while (true) {
+            int i = base + hands[set];
+            hands[set] = (hands[set] + 1) % ways;
+            if (!referenced[i]) return i;
+            referenced[i] = false; // second chance
+        }
+    }
+
+    /**
+     * Drops the translation of one page, after its page table entry changed, including a huge entry covering it
+     * @param asid Address space id of the process
+     * @param virtualPageNumber Virtual page whose mapping changed
+     */
+    public void Invalidate(int asid, int virtualPageNumber) {
+        long stamp = lock.writeLock();
+        try {
+            int base = (virtualPageNumber & setMask) * ways;
+            for (int i=base; i<base+ways; i++) {
+                if (asids[i] == asid && virtualPages[i] == virtualPageNumber) asids[i] = INVALID;
+            }
+            for (int i=0; i<hugeAsids.length; i++) {
+                int offset = virtualPageNumber - hugeFirstPages[i];
+                if (hugeAsids[i] == asid && offset >= 0 && offset >>> hugeOrders[i] == 0) hugeAsids[i] = INVALID;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops every translation of an address space, when its process exits
+     * @param asid Address space id of the process
+     */
+    public void InvalidateAll(int asid) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i=0; i<asids.length; i++) if (asids[i] == asid) asids[i] = INVALID;
+            for (int i=0; i<hugeAsids.length; i++) if (hugeAsids[i] == asid) hugeAsids[i] = INVALID;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
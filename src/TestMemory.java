@@ -0,0 +1,27 @@
+/**
+ * Sequential memory workload: allocates a buffer, writes every byte of it in order, reads it back, checks it and frees
+ * it, then reports its page faults and how many of the pages read ahead for it were used
+ */
+public class TestMemory extends UserlandProcess {
+    private static final int SIZE = 64 * 1024;
+
+    @Override
+    public void run() {
+        while (true) { // infinite loop as per assignment requirements
+            int address = OS.AllocateMemory(SIZE);
+            if (address == -1) {
+                System.out.println("TestMemory: out of memory");
+                OS.Sleep(50);
+                continue;
+            }
+            for (int i=0; i<SIZE; i++) Write(address + i, (byte) i);
+            boolean ok = true;
+            for (int i=0; i<SIZE; i++) ok &= Read(address + i) == (byte) i;
+            OS.FreeMemory(address, SIZE);
+            Kernel kernel = OS.pKernel;
+            System.out.println("TestMemory " + OS.GetPid() + ": " + (ok ? "ok" : "CORRUPTED") + ", " + kernel.GetPageFaults() + " page faults, "
+                    + kernel.GetPrefetchHits() + " of " + kernel.GetPrefetched() + " pages read ahead used");
+            OS.Sleep(50);
+        }
+    }
+}
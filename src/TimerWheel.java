@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed timing wheel holding sleeping processes, keyed on the scheduler clock (monotonic nanoTime or virtual time).
+ * Insert is O(1); Advance() visits only the slots for ticks that passed since the last call
+ * and hands back every process whose deadline is up as one batch
+ */
+public class TimerWheel {
+    private static final int SLOTS = 512; // power of two so the slot is a mask of the tick
+    private final long tickNanos;
+    private final List<List<Sleeper>> slots;
+    private final List<Sleeper> due; // added with a deadline that already passed
+    private long currentTick; // last tick whose slot was processed
+    private int size;
+    private final LatencyStats lateness; // how far past its deadline a sleeper was woken
+    private final ReentrantLock lock;
+
+    /**
+     * A sleeping process and the tick at which it may wake
+     */
+    private static class Sleeper {
+        final KernelandProcess kp;
+        final long deadlineNanos, deadlineTick;
+        Sleeper(KernelandProcess kp, long deadlineNanos, long deadlineTick) {
+            this.kp = kp;
+            this.deadlineNanos = deadlineNanos;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    /**
+     * Constructs an empty wheel
+     * @param tickNanos Resolution of the wheel in nanoseconds
+     * @param nowNanos Current time, the wheel starts at this tick
+     */
+    public TimerWheel(long tickNanos, long nowNanos) {
+        this.tickNanos = tickNanos;
+        this.slots = new ArrayList<>(SLOTS);
+        for (int i=0; i<SLOTS; i++) slots.add(new ArrayList<>());
+        this.due = new ArrayList<>();
+        this.currentTick = Math.floorDiv(nowNanos, tickNanos); // nanoTime may be negative; rounds like Add
+        this.lateness = new LatencyStats("Sleep wakeup lateness");
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Adds a sleeping process. The deadline is rounded up to a tick so nobody is woken early
+     * @param kp The sleeping KernelandProcess
+     * @param deadlineNanos Clock time at which the process should wake
+     */
+    public void Add(KernelandProcess kp, long deadlineNanos) {
+        long deadlineTick = Math.floorDiv(deadlineNanos + tickNanos - 1, tickNanos);
+        lock.lock();
+        try {
+            Sleeper sleeper = new Sleeper(kp, deadlineNanos, deadlineTick);
+            if (deadlineTick <= currentTick) due.add(sleeper);
+            else slots.get((int) (deadlineTick & (SLOTS - 1))).add(sleeper);
+            size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the wheel forward to the given time and removes every process whose deadline is up
+     * @param nowNanos Current time
+     * @return Processes to wake, empty if none are due
+     */
+    public List<KernelandProcess> Advance(long nowNanos) {
+        long nowTick = Math.floorDiv(nowNanos, tickNanos);
+        lock.lock();
+        try {
+            if (size == 0) {
+                currentTick = Math.max(currentTick, nowTick);
+                return List.of();
+            }
+            List<KernelandProcess> awake = new ArrayList<>();
+            for (Sleeper sleeper : due) Wake(sleeper, nowNanos, awake);
+            due.clear();
+            if (nowTick > currentTick) {
+                // a jump of a whole revolution or more visits each slot once
+                long ticks = Math.min(nowTick - currentTick, SLOTS);
+                for (long t = currentTick + 1; t <= currentTick + ticks; t++) {
+                    ExpireSlot(slots.get((int) (t & (SLOTS - 1))), nowTick, nowNanos, awake);
+                }
+                currentTick = nowTick;
+            }
+            size -= awake.size();
+            return awake;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the sleepers of one slot whose tick has come; later rounds of the wheel stay in place
+     */
+    private void ExpireSlot(List<Sleeper> slot, long nowTick, long nowNanos, List<KernelandProcess> awake) {
+        int kept = 0;
+        for (int i=0; i<slot.size(); i++) {
+            Sleeper sleeper = slot.get(i);
+            if (sleeper.deadlineTick <= nowTick) Wake(sleeper, nowNanos, awake);
+            else slot.set(kept++, sleeper);
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private void Wake(Sleeper sleeper, long nowNanos, List<KernelandProcess> awake) {
+        lateness.Record(Math.max(0, nowNanos - sleeper.deadlineNanos));
+        awake.add(sleeper.kp);
+    }
+
+    /**
+     * Finds the earliest deadline, for the discrete-event clock to jump to when every CPU is idle.
+     * Walks one revolution of slots from the current tick; only falls back to a full scan if every sleeper is further out
+     * @return Earliest deadline in nanoseconds, Long.MAX_VALUE if nobody is sleeping
+     */
+    public long NextDeadline() {
+        lock.lock();
+        try {
+            long earliest = Long.MAX_VALUE;
+            for (Sleeper sleeper : due) earliest = Math.min(earliest, sleeper.deadlineNanos);
+            if (earliest != Long.MAX_VALUE || size == 0) return earliest;
+            for (long t = currentTick + 1; t <= currentTick + SLOTS; t++) {
+                for (Sleeper sleeper : slots.get((int) (t & (SLOTS - 1)))) {
+                    if (sleeper.deadlineTick == t) earliest = Math.min(earliest, sleeper.deadlineNanos);
+                }
+                if (earliest != Long.MAX_VALUE) return earliest;
+            }
+            for (List<Sleeper> slot : slots) {
+                for (Sleeper sleeper : slot) earliest = Math.min(earliest, sleeper.deadlineNanos);
+            }
+            return earliest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of sleeping processes
+     * @return Number of processes in the wheel
+     */
+    public int Size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves how late sleepers were woken relative to their deadline
+     * @return Wakeup lateness statistics
+     */
+    public LatencyStats GetLateness() {
+        return lateness;
+    }
+}
@@ -1,6 +1,8 @@
 public abstract class UserlandProcess implements Runnable {
-    static int[][] TLB = new int[2][2];
-    static byte[] memory = new byte[1048576]; // 1024*1024 bytes
-    abstract byte Read(int address);
-    abstract void Write(int address, byte value);
+    static PhysicalMemory memory = new HeapMemory(1048576); // 1024*1024 bytes until the kernel sizes it from its config
+    final MMU mmu = new MMU(); // translates every access of this process
+    byte Read(int address) { return mmu.Read(address); }
+    void Write(int address, byte value) { mmu.Write(address, value); }
+    void ReadBlock(int address, byte[] buffer) { mmu.ReadBlock(address, buffer); }
+    void WriteBlock(int address, byte[] buffer) { mmu.WriteBlock(address, buffer); }
 }
@@ -1,12 +1,15 @@
 import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 public class VirtualFileSystem implements Device {
     private final Device[] device;
     private final int[] id;
+    private final ReentrantLock lock; // held across device I/O, so a monitor would pin virtual threads
     private static FakeFileSystem ffs;
     private static RandomDevice rd;
     public VirtualFileSystem() throws Exception {
         this.device = new Device[10];
         this.id = new int[10];
+        this.lock = new ReentrantLock();
         Arrays.fill(this.device, null);
         Arrays.fill(this.id, -1);
         ffs = new FakeFileSystem("file");
@@ -22,7 +25,8 @@ public class VirtualFileSystem implements Device {
      */
     @Override
     public int Open(String s) {
-        synchronized (this.device) {
+        lock.lock();
+        try {
             String[] arr = s.split(" ", 2);
             if (arr[0].equals("random")) {
                 System.out.println("Opening Random from VFS for file " + arr[1]);
@@ -49,6 +53,8 @@ public class VirtualFileSystem implements Device {
                     }
                 }
             }
+        } finally {
+            lock.unlock();
         }
         System.out.println("------------VFS: No entries available to open------------");
         return -1;
@@ -76,11 +82,14 @@ public class VirtualFileSystem implements Device {
     @Override
     public byte[] Read(int id, int size) {
         System.out.println("VFS reading at id " + id + "\n");
-        synchronized (this.device) {
+        lock.lock();
+        try {
             int newId = this.id[id];
             System.out.print("This device: " + this.device[id] + "\n");
             if (newId == -1) return new byte[0];
             return this.device[newId].Read(id, size);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -104,11 +113,14 @@ public class VirtualFileSystem implements Device {
     @Override
     public int Write(int id, byte[] data) {
         System.out.println("VFS writing at id " + id);
-        synchronized (this.device) {
+        lock.lock();
+        try {
             int newId = this.id[id];
             Device dev = this.device[id];
             if (newId == -1) return 0;
             return dev.Write(newId, data);
+        } finally {
+            lock.unlock();
         }
     }
     public FakeFileSystem GetFFS() {
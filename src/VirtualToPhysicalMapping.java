@@ -0,0 +1,30 @@
+/**
+ * Page table entry of one virtual page: where it lives in memory and on disk, and whether it may be written
+ */
+public class VirtualToPhysicalMapping {
+    public int physicalPageNumber; // -1 if the page is not in memory
+    public int diskPageNumber; // -1 if the page was never written to the swap file
+    public boolean writable; // false while the frame is shared copy-on-write
+    public boolean copyOnWrite; // a write fault gives this process its own copy of the frame
+    public boolean dirty; // written since it was last paged in, so eviction must write it back
+    public boolean accessed; // referenced since the replacement policy last cleared it
+    public boolean shared; // maps a page of a SharedSegment: writes are seen by every process mapping it
+    public int hugeOrder; // > 0 while the page is part of an intact huge page of 2^hugeOrder contiguous frames
+    public boolean prefetched; // brought in by read-ahead and not used yet
+    public boolean referenced; // referenced since the working-set sampler last looked, kept apart from accessed
+    public byte referenceHistory; // one bit per working-set sample, most recent in the top bit
+
+    public VirtualToPhysicalMapping() {
+        this.physicalPageNumber = -1;
+        this.diskPageNumber = -1;
+        this.writable = true;
+        this.copyOnWrite = false;
+        this.dirty = false;
+        this.accessed = false;
+        this.shared = false;
+        this.hugeOrder = 0;
+        this.prefetched = false;
+        this.referenced = false;
+        this.referenceHistory = 0;
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs processes that each sweep their own buffer over and over, with buffers that together need more frames than
+ * there are, and reports how many pages they got through, the page faults, and every working set as sampled.
+ * Without load control each process evicts the others' pages and they all thrash; with it some are suspended
+ * until the rest fit. Run it with load control off and on to compare.
+ * Usage: WorkingSetBenchmark [processes] [pages each] [frames] [seconds] [loadControl]
+ */
+public class WorkingSetBenchmark {
+    private static int processes, pages, seconds;
+    private static final AtomicLong touched = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        processes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        pages = args.length > 1 ? Integer.parseInt(args[1]) : 384;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        boolean loadControl = args.length > 4 ? Boolean.parseBoolean(args[4]) : true;
+
+        System.out.println(processes + " processes of " + pages + " pages, " + frames + " frames, load control " + (loadControl ? "on" : "off"));
+        OS.Startup(new Driver(), new KernelConfig().SetSeed(412).SetPhysicalFrames(frames).SetQuantumMillis(20)
+                .SetWorkingSetSampling(100, 4).SetLoadControl(loadControl));
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**
+     * Starts the workers, lets them run, then reports
+     */
+    static class Driver extends UserlandProcess {
+        @Override
+        public void run() {
+            for (int i=0; i<processes; i++) OS.CreateProcess(new Sweeper());
+            Kernel kernel = OS.pKernel;
+            long start = System.nanoTime();
+            for (int s=1; s<=seconds; s++) {
+                OS.Sleep(1000);
+                if (s % 5 == 0 || s == seconds) System.out.println(kernel.GetWorkingSetReport());
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            Scheduler scheduler = kernel.GetScheduler();
+            System.out.println(touched.get() * 1000 / millis + " pages touched/s, " + kernel.GetPageFaults() * 1000 / millis + " faults/s ("
+                    + kernel.GetMajorFaults() + " from swap), " + scheduler.GetSuspensions() + " suspensions, " + scheduler.GetResumptions() + " resumptions");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Writes one byte of every page of its buffer, in order, forever
+     */
+    static class Sweeper extends UserlandProcess {
+        @Override
+        public void run() {
+            int address = OS.AllocateMemory(pages * 1024);
+            for (int pass=0; ; pass++) {
+                for (int p=0; p<pages; p++) Write(address + p*1024, (byte) pass);
+                touched.addAndGet(pages);
+            }
+        }
+    }
+}
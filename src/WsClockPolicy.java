@@ -0,0 +1,57 @@
+/**
+ * WSClock: a clock over the frames that also keeps the time each page was last seen referenced. Pages used within
+ * the working-set window are kept; an older clean page is evicted, an older dirty page is written back so it
+ * can go without I/O on the next lap. If every page is in the working set, the least recently used one goes
+ */
+public class WsClockPolicy implements PageReplacementPolicy {
+    private final int frames;
+    private final Frames view;
+    private final long window;
+    private final long[] lastUsed;
+    private int hand;
+
+    /**
+     * @param frames Number of physical frames
+     * @param view Accessed and dirty bits of the frames
+     * @param window Working-set window, in Frames.Now() ticks
+     */
+    public WsClockPolicy(int frames, Frames view, long window) {
+        this.frames = frames;
+        this.view = view;
+        this.window = window;
+        this.lastUsed = new long[frames];
+    }
+
+    @Override
+    public void Loaded(int frame, long page) {
+        lastUsed[frame] = view.Now();
+    }
+
+    @Override
+    public void Released(int frame) {}
+
+    @Override
+    public int SelectVictim() {
+        long now = view.Now();
+        int oldest = -1;
+        boolean cleaned = false;
+        for (int n=0; n<2*frames; n++) {
+            if (n == frames && oldest != -1 && !cleaned) break; // a second lap only helps to find the pages written back in the first
+            int frame = hand;
+            hand = (hand + 1) % frames;
+            if (!view.IsEvictable(frame)) continue;
+            if (view.IsAccessed(frame)) {
+                view.ClearAccessed(frame);
+                lastUsed[frame] = now;
+                continue;
+            }
+            if (now - lastUsed[frame] > window) {
+                if (!view.IsDirty(frame)) return frame;
+                view.Clean(frame);
+                cleaned = true;
+            }
+            if (oldest == -1 || lastUsed[frame] < lastUsed[oldest]) oldest = frame;
+        }
+        return oldest;
+    }
+}